@@ -4,7 +4,139 @@
 #include <MNN/ImageProcess.hpp>
 #include <MNN/Interpreter.hpp>
 #include <MNN/Tensor.hpp>
+#include <algorithm>
+#include <cmath>
+#include <map>
 #include <memory>
+#include <mutex>
+#include <vector>
+#include <errno.h>
+#include <sched.h>
+#include <time.h>
+
+// Staging of a batched input: the host tensor of the whole batch, one image and the converter.
+struct BatchInput {
+    std::unique_ptr<MNN::Tensor> host;
+    std::unique_ptr<MNN::Tensor> image;
+    std::unique_ptr<MNN::CV::ImageProcess> process;
+    MNN::CV::ImageProcess::Config config;
+};
+
+// Host copies of device tensors, kept per session so outputs are fetched into preallocated memory.
+// Batched inputs are staged in memory that is kept the same way.
+struct HostMirrorCache {
+    MNN::Interpreter *net = nullptr;
+    std::map<const MNN::Tensor *, std::unique_ptr<MNN::Tensor>> mirrors;
+    std::map<const MNN::Tensor *, BatchInput> batchInputs;
+    jlong hits = 0;
+    jlong misses = 0;
+};
+
+static std::mutex gHostMirrorMutex;
+static std::map<jlong, HostMirrorCache> gHostMirrors;
+
+// Cached host mirror of tensor, or nullptr if the session is unknown.
+static MNN::Tensor *getHostMirror(jlong sessionPtr, const MNN::Tensor *tensor) {
+    std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+    auto cache = gHostMirrors.find(sessionPtr);
+    if (cache == gHostMirrors.end()) {
+        return nullptr;
+    }
+    auto mirror = cache->second.mirrors.find(tensor);
+    if (mirror != cache->second.mirrors.end()) {
+        cache->second.hits++;
+        return mirror->second.get();
+    }
+    cache->second.misses++;
+    auto created = new MNN::Tensor(tensor, tensor->getDimensionType(), true);
+    cache->second.mirrors[tensor].reset(created);
+    return created;
+}
+
+// Copy tensor to host memory: the cached mirror, or a temporary one held by fallback.
+static MNN::Tensor *copyToHostMirror(jlong sessionPtr, MNN::Tensor *tensor,
+                                     std::unique_ptr<MNN::Tensor> &fallback) {
+    auto mirror = getHostMirror(sessionPtr, tensor);
+    if (mirror == nullptr) {
+        fallback.reset(new MNN::Tensor(tensor, tensor->getDimensionType(), true));
+        mirror = fallback.get();
+    }
+    tensor->copyToHostTensor(mirror);
+    return mirror;
+}
+
+// Drop the mirrors of a tensor that is resized or freed, its address may be reused by another tensor.
+static void forgetHostMirror(const MNN::Tensor *tensor) {
+    std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+    for (auto &cache : gHostMirrors) {
+        cache.second.mirrors.erase(tensor);
+        cache.second.batchInputs.erase(tensor);
+    }
+}
+
+static bool sameConfig(const MNN::CV::ImageProcess::Config &a, const MNN::CV::ImageProcess::Config &b) {
+    return a.filterType == b.filterType && a.sourceFormat == b.sourceFormat && a.destFormat == b.destFormat
+           && a.wrap == b.wrap && std::equal(a.mean, a.mean + 4, b.mean)
+           && std::equal(a.normal, a.normal + 4, b.normal);
+}
+
+// Staging of the batched tensor, created on first use and whenever the config changes.
+// The caller holds gHostMirrorMutex, nullptr if the session is unknown.
+static BatchInput *getBatchInput(jlong sessionPtr, const MNN::Tensor *tensor,
+                                 const MNN::CV::ImageProcess::Config &config) {
+    auto cache = gHostMirrors.find(sessionPtr);
+    if (cache == gHostMirrors.end()) {
+        return nullptr;
+    }
+    auto &input = cache->second.batchInputs[tensor];
+    //Shape checked too, in case the tensor was reshaped without going through the cache
+    if (input.host == nullptr || input.host->batch() != tensor->batch()
+        || input.host->elementSize() != tensor->elementSize()) {
+        //The batch is the outermost dimension of NCHW and NHWC, so every image is one slice of the host tensor
+        auto dimensionType = tensor->getDimensionType() == MNN::Tensor::TENSORFLOW ? MNN::Tensor::TENSORFLOW
+                                                                                   : MNN::Tensor::CAFFE;
+        input.host.reset(new MNN::Tensor(tensor, dimensionType));
+        auto shape = input.host->shape();
+        shape[0] = 1;
+        input.image.reset(MNN::Tensor::create(shape, tensor->getType(), nullptr, dimensionType));
+    }
+    if (input.process == nullptr || !sameConfig(input.config, config)) {
+        input.process.reset(MNN::CV::ImageProcess::create(config));
+        input.config = config;
+    }
+    return &input;
+}
+
+static jlong monotonicNanos() {
+    timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (jlong) ts.tv_sec * 1000000000LL + ts.tv_nsec;
+}
+
+// Host copies of the outputs of named ops, allocated once and reused by every run,
+// plus the time of every op of the last run.
+struct Capture {
+    MNN::Interpreter *net = nullptr;
+    MNN::Session *session = nullptr;
+    std::map<std::string, size_t> indices;
+    std::vector<std::unique_ptr<MNN::Tensor>> tensors;
+    std::vector<std::string> opNames;
+    std::vector<jlong> opNanos;
+    size_t opCount = 0;
+    jlong opStart = 0;
+};
+
+static bool sameShape(const MNN::Tensor *a, const MNN::Tensor *b) {
+    if (a->dimensions() != b->dimensions() || a->getType() != b->getType()) {
+        return false;
+    }
+    for (int i = 0; i < a->dimensions(); ++i) {
+        if (a->length(i) != b->length(i)) {
+            return false;
+        }
+    }
+    return true;
+}
 
 extern "C" JNIEXPORT jlong JNICALL
 
@@ -18,12 +150,38 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCreateNetFromFile(JNIEn
     return (jlong) interpreter;
 }
 
+//The interpreter keeps its own copy of the model, the buffer can be unmapped afterwards
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCreateNetFromBuffer(JNIEnv *env,
+                                                                                   jclass type,
+                                                                                   jobject buffer) {
+    void *data = env->GetDirectBufferAddress(buffer);
+    jlong size = env->GetDirectBufferCapacity(buffer);
+    if (nullptr == data || size <= 0) {
+        return 0;
+    }
+    auto interpreter = MNN::Interpreter::createFromBuffer(data, (size_t) size);
+
+    return (jlong) interpreter;
+}
+
 extern "C" JNIEXPORT jlong JNICALL
 Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeReleaseNet(JNIEnv *env, jclass type,
                                                                           jlong netPtr) {
     if (0 == netPtr) {
         return 0;
     }
+    {
+        // Sessions are released together with their net
+        std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+        for (auto cache = gHostMirrors.begin(); cache != gHostMirrors.end();) {
+            if (cache->second.net == (MNN::Interpreter *) netPtr) {
+                cache = gHostMirrors.erase(cache);
+            } else {
+                ++cache;
+            }
+        }
+    }
     delete ((MNN::Interpreter *) netPtr);
     return 0;
 }
@@ -31,6 +189,7 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeReleaseNet(JNIEnv *env,
 extern "C" JNIEXPORT jlong JNICALL
 Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCreateSession(
         JNIEnv *env, jclass type, jlong netPtr, jint forwardType, jint numThread,
+        jint precision, jint power, jint memory,
         jobjectArray jsaveTensors,
         jobjectArray joutputTensors) {
     MNN::ScheduleConfig config;
@@ -38,6 +197,12 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCreateSession(
     if (numThread > 0) {
         config.numThread = numThread;
     }
+    //Only read while the session is created
+    MNN::BackendConfig backendConfig;
+    backendConfig.precision = (MNN::BackendConfig::PrecisionMode) precision;
+    backendConfig.power = (MNN::BackendConfig::PowerMode) power;
+    backendConfig.memory = (MNN::BackendConfig::MemoryMode) memory;
+    config.backendConfig = &backendConfig;
 
     if (jsaveTensors != NULL) {
         int size = env->GetArrayLength(jsaveTensors);
@@ -72,6 +237,10 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCreateSession(
     }
 
     auto session = ((MNN::Interpreter *) netPtr)->createSession(config);
+    if (session != nullptr) {
+        std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+        gHostMirrors[(jlong) session].net = (MNN::Interpreter *) netPtr;
+    }
     return (jlong) session;
 }
 
@@ -82,6 +251,10 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeReleaseSession(JNIEnv *
                                                                               jlong sessionPtr) {
     auto net = (MNN::Interpreter *) netPtr;
     auto session = (MNN::Session *) sessionPtr;
+    {
+        std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+        gHostMirrors.erase(sessionPtr);
+    }
     net->releaseSession(session);
 }
 
@@ -94,59 +267,116 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeRunSession(JNIEnv *env,
     return net->runSession(session);
 }
 
-extern "C" JNIEXPORT jint JNICALL
-Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeRunSessionWithCallback(
-        JNIEnv *env, jclass type, jlong netPtr, jlong sessionPtr, jobjectArray nameArray,
-        jlongArray jtensoraddrs) {
-    int nameSize = env->GetArrayLength(nameArray);
-    int tensorSize = env->GetArrayLength(jtensoraddrs);
-    if (tensorSize < nameSize) {
-        MNN_ERROR("tensor array not enough!");
-    }
-
-    jlong *tensoraddrs = (jlong *) env->GetLongArrayElements(jtensoraddrs, nullptr);
-
-    std::vector<std::string> nameVector;
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCreateCapture(JNIEnv *env, jclass type,
+                                                                     jlong netPtr,
+                                                                     jlong sessionPtr,
+                                                                     jobjectArray nameArray) {
+    auto capture = new Capture();
+    capture->net = (MNN::Interpreter *) netPtr;
+    capture->session = (MNN::Session *) sessionPtr;
 
+    int nameSize = env->GetArrayLength(nameArray);
     for (int i = 0; i < nameSize; i++) {
         jstring jname = (jstring) env->GetObjectArrayElement(nameArray, i);
         const char *name = env->GetStringUTFChars(jname, NULL);
-        std::string nameStr = name;
-        nameVector.push_back(nameStr);
-
+        capture->indices[name] = i;
         env->ReleaseStringUTFChars(jname, name);
         env->DeleteLocalRef(jname);
     }
+    capture->tensors.resize(nameSize);
+    return (jlong) capture;
+}
 
-    MNN::TensorCallBack beforeCallBack = [&](const std::vector<MNN::Tensor *> &ntensors,
-                                             const std::string &opName) {
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeRunCapture(JNIEnv *env, jclass type,
+                                                                  jlong capturePtr) {
+    auto capture = (Capture *) capturePtr;
+    capture->opCount = 0;
+
+    MNN::TensorCallBack beforeCallBack = [capture](const std::vector<MNN::Tensor *> &ntensors,
+                                                   const std::string &opName) {
+        capture->opStart = monotonicNanos();
         return true;
     };
 
-    MNN::TensorCallBack AfterCallBack = [&](const std::vector<MNN::Tensor *> &ntensors,
-                                            const std::string &opName) {
-        for (int i = 0; i < nameVector.size(); i++) {
-            if (nameVector.at(i) == opName) {
-                auto ntensor = ntensors[0];
-
-                auto outputTensorUser = new MNN::Tensor(ntensor, MNN::Tensor::TENSORFLOW);
-                ntensor->copyToHostTensor(outputTensorUser);
-                tensoraddrs[i] = (long) outputTensorUser;
+    MNN::TensorCallBack afterCallBack = [capture](const std::vector<MNN::Tensor *> &ntensors,
+                                                  const std::string &opName) {
+        jlong elapsed = monotonicNanos() - capture->opStart;
+        // Slots are reused, so a steady graph does not allocate after the first run
+        if (capture->opCount == capture->opNames.size()) {
+            capture->opNames.push_back(opName);
+            capture->opNanos.push_back(elapsed);
+        } else {
+            if (capture->opNames[capture->opCount] != opName) {
+                capture->opNames[capture->opCount] = opName;
             }
+            capture->opNanos[capture->opCount] = elapsed;
+        }
+        capture->opCount++;
+
+        auto index = capture->indices.find(opName);
+        if (index != capture->indices.end() && !ntensors.empty()) {
+            auto ntensor = ntensors[0];
+            auto &tensor = capture->tensors[index->second];
+            if (tensor == nullptr || !sameShape(tensor.get(), ntensor)) {
+                if (tensor != nullptr) {
+                    forgetHostMirror(tensor.get());
+                }
+                tensor.reset(new MNN::Tensor(ntensor, MNN::Tensor::TENSORFLOW));
+            }
+            ntensor->copyToHostTensor(tensor.get());
         }
         return true;
     };
 
-    auto net = (MNN::Interpreter *) netPtr;
-    auto session = (MNN::Session *) sessionPtr;
+    return capture->net->runSessionWithCallBack(capture->session, beforeCallBack, afterCallBack, true);
+}
 
-    net->runSessionWithCallBack(session, beforeCallBack, AfterCallBack, true);
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCaptureGetTensor(JNIEnv *env, jclass type,
+                                                                        jlong capturePtr,
+                                                                        jint index) {
+    auto capture = (Capture *) capturePtr;
+    if (index < 0 || index >= (jint) capture->tensors.size()) {
+        return 0;
+    }
+    return (jlong) capture->tensors[index].get();
+}
 
-    env->SetLongArrayRegion(jtensoraddrs, 0, tensorSize, tensoraddrs);
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCaptureGetOpNames(JNIEnv *env, jclass type,
+                                                                         jlong capturePtr) {
+    auto capture = (Capture *) capturePtr;
+    jobjectArray result = env->NewObjectArray((jsize) capture->opCount,
+                                              env->FindClass("java/lang/String"), nullptr);
+    for (size_t i = 0; i < capture->opCount; i++) {
+        jstring name = env->NewStringUTF(capture->opNames[i].c_str());
+        env->SetObjectArrayElement(result, (jsize) i, name);
+        env->DeleteLocalRef(name);
+    }
+    return result;
+}
 
-    env->ReleaseLongArrayElements(jtensoraddrs, tensoraddrs, 0);
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeCaptureGetOpNanos(JNIEnv *env, jclass type,
+                                                                         jlong capturePtr) {
+    auto capture = (Capture *) capturePtr;
+    jlongArray result = env->NewLongArray((jsize) capture->opCount);
+    env->SetLongArrayRegion(result, 0, (jsize) capture->opCount, capture->opNanos.data());
+    return result;
+}
 
-    return 0;
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeReleaseCapture(JNIEnv *env, jclass type,
+                                                                      jlong capturePtr) {
+    auto capture = (Capture *) capturePtr;
+    for (auto &tensor : capture->tensors) {
+        if (tensor != nullptr) {
+            forgetHostMirror(tensor.get());
+        }
+    }
+    delete capture;
 }
 
 extern "C" JNIEXPORT jint JNICALL
@@ -157,6 +387,15 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeReshapeSession(JNIEnv *
     auto net = (MNN::Interpreter *) netPtr;
     auto session = (MNN::Session *) sessionPtr;
     net->resizeSession(session);
+    {
+        // Tensors may have new shapes or new memory
+        std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+        auto cache = gHostMirrors.find(sessionPtr);
+        if (cache != gHostMirrors.end()) {
+            cache->second.mirrors.clear();
+            cache->second.batchInputs.clear();
+        }
+    }
     return 0;
 }
 
@@ -206,6 +445,7 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeReshapeTensor(JNIEnv *e
     auto tensor = (MNN::Tensor *) tensorPtr;
     net->resizeTensor(tensor, dimVector);
     env->ReleaseIntArrayElements(dims_, dims, 0);
+    forgetHostMirror(tensor);
 }
 
 extern "C" JNIEXPORT void JNICALL
@@ -258,6 +498,7 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetDimensions(JNI
 extern "C" JNIEXPORT jint JNICALL
 Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetUINT8Data(JNIEnv *env,
                                                                                   jclass type,
+                                                                                  jlong sessionPtr,
                                                                                   jlong tensorPtr,
                                                                                   jbyteArray jdest) {
     auto tensor = (MNN::Tensor *) tensorPtr;
@@ -269,9 +510,7 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetUINT8Data(JNIE
     std::unique_ptr<MNN::Tensor> hostTensor;
     if (tensor->host<int>() == nullptr) {
         // GPU buffer
-        hostTensor.reset(new MNN::Tensor(tensor, tensor->getDimensionType(), true));
-        tensor->copyToHostTensor(hostTensor.get());
-        tensor = hostTensor.get();
+        tensor = copyToHostMirror(sessionPtr, tensor, hostTensor);
     }
 
     auto size = tensor->elementSize();
@@ -290,6 +529,7 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetUINT8Data(JNIE
 extern "C" JNIEXPORT jint JNICALL
 Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetIntData(JNIEnv *env,
                                                                                 jclass type,
+                                                                                jlong sessionPtr,
                                                                                 jlong tensorPtr,
                                                                                 jintArray dest) {
     auto tensor = (MNN::Tensor *) tensorPtr;
@@ -301,9 +541,7 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetIntData(JNIEnv
     auto length = env->GetArrayLength(dest);
     if (tensor->host<int>() == nullptr) {
         // GPU buffer
-        hostTensor.reset(new MNN::Tensor(tensor, tensor->getDimensionType(), true));
-        tensor->copyToHostTensor(hostTensor.get());
-        tensor = hostTensor.get();
+        tensor = copyToHostMirror(sessionPtr, tensor, hostTensor);
     }
 
     auto size = tensor->elementSize();
@@ -322,6 +560,7 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetIntData(JNIEnv
 extern "C" JNIEXPORT jint JNICALL
 Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetData(JNIEnv *env,
                                                                              jclass type,
+                                                                             jlong sessionPtr,
                                                                              jlong tensorPtr,
                                                                              jfloatArray dest) {
     auto tensor = reinterpret_cast<MNN::Tensor *>(tensorPtr);
@@ -331,10 +570,8 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetData(JNIEnv *e
         return hostTensor->elementSize();
     }
     auto length = env->GetArrayLength(dest);
-    std::unique_ptr<MNN::Tensor> hostTensor(
-            new MNN::Tensor(tensor, tensor->getDimensionType(), true));
-    tensor->copyToHostTensor(hostTensor.get());
-    tensor = hostTensor.get();
+    std::unique_ptr<MNN::Tensor> hostTensor;
+    tensor = copyToHostMirror(sessionPtr, tensor, hostTensor);
 
     auto size = tensor->elementSize();
     if (length < size) {
@@ -348,6 +585,57 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorGetData(JNIEnv *e
     return JNI_TRUE;
 }
 
+// Host memory of the tensor can be used as is: it exists and is not in the packed NC4HW4 layout.
+static bool isHostMappable(const MNN::Tensor *tensor) {
+    return tensor->host<void>() != nullptr && tensor->getDimensionType() != MNN::Tensor::CAFFE_C4;
+}
+
+extern "C" JNIEXPORT jobject JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorMapBuffer(JNIEnv *env,
+                                                                       jclass type,
+                                                                       jlong tensorPtr) {
+    auto tensor = (MNN::Tensor *) tensorPtr;
+    if (!isHostMappable(tensor)) {
+        return nullptr;
+    }
+    // No copy, the buffer is only valid until the session is resized or released
+    return env->NewDirectByteBuffer(tensor->host<void>(), tensor->size());
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeTensorWrapDirectBuffer(JNIEnv *env,
+                                                                              jclass type,
+                                                                              jlong tensorPtr,
+                                                                              jobject jbuffer,
+                                                                              jboolean write) {
+    auto tensor = (MNN::Tensor *) tensorPtr;
+
+    // Host tensor in a plain layout over the Java memory, MNN converts from or to the device layout
+    auto dimType = tensor->getDimensionType();
+    if (dimType == MNN::Tensor::CAFFE_C4) {
+        dimType = MNN::Tensor::CAFFE;
+    }
+    std::unique_ptr<MNN::Tensor> hostTensor(new MNN::Tensor(tensor, dimType, false));
+    if (nullptr == jbuffer) {
+        return hostTensor->size();
+    }
+
+    void *address = env->GetDirectBufferAddress(jbuffer);
+    if (address == nullptr) {
+        MNN_ERROR("Buffer is not direct");
+        return -1;
+    }
+    if (env->GetDirectBufferCapacity(jbuffer) < hostTensor->size()) {
+        MNN_ERROR("Can't copy buffer, length no enough");
+        return -1;
+    }
+    hostTensor->buffer().host = (uint8_t *) address;
+
+    bool copied = write ? tensor->copyFromHostTensor(hostTensor.get())
+                        : tensor->copyToHostTensor(hostTensor.get());
+    return copied ? hostTensor->size() : -1;
+}
+
 extern "C" JNIEXPORT jboolean JNICALL
 Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeConvertBufferToTensor(
         JNIEnv *env, jclass type, jbyteArray jbufferData, jint jwidth, jint jheight,
@@ -401,6 +689,127 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeConvertBufferToTensor(
     return JNI_TRUE;
 }
 
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeConvertDirectBufferToTensor(
+        JNIEnv *env, jclass type, jobject jbuffer, jint jwidth, jint jheight,
+        jlong tensorPtr, jint srcType,
+        jint destFormat, jint filterType, jint wrap, jfloatArray matrixValue_, jfloatArray mean_,
+        jfloatArray normal_) {
+    // Pixels are read in place, no copy into a Java array
+    auto bufferData = (const unsigned char *) env->GetDirectBufferAddress(jbuffer);
+    if (bufferData == nullptr) {
+        MNN_ERROR("Error Buffer is not direct!\n");
+        return JNI_FALSE;
+    }
+
+    {
+        auto size = env->GetArrayLength(matrixValue_);
+        if (size < 9) {
+            MNN_ERROR("Error matrix length:%d\n", size);
+            return JNI_FALSE;
+        }
+    }
+
+    MNN::CV::ImageProcess::Config config;
+    config.destFormat = (MNN::CV::ImageFormat) destFormat;
+    config.sourceFormat = (MNN::CV::ImageFormat) srcType;
+
+    // mean、normal
+    jfloat *mean = env->GetFloatArrayElements(mean_, NULL);
+    jfloat *normal = env->GetFloatArrayElements(normal_, NULL);
+    ::memcpy(config.mean, mean, 3 * sizeof(float));
+    ::memcpy(config.normal, normal, 3 * sizeof(float));
+    // filterType、wrap
+    config.filterType = (MNN::CV::Filter) filterType;
+    config.wrap = (MNN::CV::Wrap) wrap;
+    env->ReleaseFloatArrayElements(mean_, mean, JNI_ABORT);
+    env->ReleaseFloatArrayElements(normal_, normal, JNI_ABORT);
+
+    // matrix
+    jfloat *matrixValue = env->GetFloatArrayElements(matrixValue_, NULL);
+    MNN::CV::Matrix transform;
+    transform.set9((float *) matrixValue);
+    env->ReleaseFloatArrayElements(matrixValue_, matrixValue, JNI_ABORT);
+
+    std::unique_ptr<MNN::CV::ImageProcess> process(MNN::CV::ImageProcess::create(config));
+    process->setMatrix(transform);
+
+    auto tensor = (MNN::Tensor *) tensorPtr;
+
+    process->convert(bufferData, jwidth, jheight, 0, tensor);
+
+    return JNI_TRUE;
+}
+
+//One image per direct buffer into the matching batch of the tensor, filled with a single copy
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeConvertDirectBuffersToTensor(
+        JNIEnv *env, jclass type, jobjectArray jbuffers, jint jwidth, jint jheight,
+        jlong sessionPtr, jlong tensorPtr, jint srcType,
+        jint destFormat, jint filterType, jint wrap, jfloatArray matrixValue_, jfloatArray mean_,
+        jfloatArray normal_) {
+    auto tensor = (MNN::Tensor *) tensorPtr;
+    auto count = env->GetArrayLength(jbuffers);
+    if (count != tensor->batch()) {
+        MNN_ERROR("Error %d buffers for batch %d!\n", count, tensor->batch());
+        return JNI_FALSE;
+    }
+
+    {
+        auto size = env->GetArrayLength(matrixValue_);
+        if (size < 9) {
+            MNN_ERROR("Error matrix length:%d\n", size);
+            return JNI_FALSE;
+        }
+    }
+
+    MNN::CV::ImageProcess::Config config;
+    config.destFormat = (MNN::CV::ImageFormat) destFormat;
+    config.sourceFormat = (MNN::CV::ImageFormat) srcType;
+
+    // mean、normal
+    jfloat *mean = env->GetFloatArrayElements(mean_, NULL);
+    jfloat *normal = env->GetFloatArrayElements(normal_, NULL);
+    ::memcpy(config.mean, mean, 3 * sizeof(float));
+    ::memcpy(config.normal, normal, 3 * sizeof(float));
+    // filterType、wrap
+    config.filterType = (MNN::CV::Filter) filterType;
+    config.wrap = (MNN::CV::Wrap) wrap;
+    env->ReleaseFloatArrayElements(mean_, mean, JNI_ABORT);
+    env->ReleaseFloatArrayElements(normal_, normal, JNI_ABORT);
+
+    // matrix
+    jfloat *matrixValue = env->GetFloatArrayElements(matrixValue_, NULL);
+    MNN::CV::Matrix transform;
+    transform.set9((float *) matrixValue);
+    env->ReleaseFloatArrayElements(matrixValue_, matrixValue, JNI_ABORT);
+
+    //Held for the whole conversion, so a concurrent release can't free the staging
+    std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+    auto input = getBatchInput(sessionPtr, tensor, config);
+    if (input == nullptr) {
+        MNN_ERROR("Error unknown session!\n");
+        return JNI_FALSE;
+    }
+    input->process->setMatrix(transform);
+
+    auto imageBytes = (size_t) input->image->size();
+    for (jsize i = 0; i < count; ++i) {
+        jobject jbuffer = env->GetObjectArrayElement(jbuffers, i);
+        auto bufferData = (const unsigned char *) env->GetDirectBufferAddress(jbuffer);
+        env->DeleteLocalRef(jbuffer);
+        if (bufferData == nullptr) {
+            MNN_ERROR("Error Buffer %d is not direct!\n", i);
+            return JNI_FALSE;
+        }
+        input->process->convert(bufferData, jwidth, jheight, 0, input->image.get());
+        ::memcpy(input->host->host<uint8_t>() + i * imageBytes, input->image->host<uint8_t>(), imageBytes);
+    }
+    tensor->copyFromHostTensor(input->host.get());
+
+    return JNI_TRUE;
+}
+
 extern "C" JNIEXPORT jboolean JNICALL
 Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeConvertBitmapToTensor(
         JNIEnv *env, jclass type, jobject srcBitmap, jlong tensorPtr, jint destFormat,
@@ -459,4 +868,128 @@ Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeConvertBitmapToTensor(
                      tensor);
     AndroidBitmap_unlockPixels(env, srcBitmap);
     return JNI_TRUE;
-}
\ No newline at end of file
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeSetThreadAffinity(JNIEnv *env, jclass type,
+                                                                          jintArray cpus_) {
+    int size = env->GetArrayLength(cpus_);
+    jint *cpus = env->GetIntArrayElements(cpus_, NULL);
+    cpu_set_t mask;
+    CPU_ZERO(&mask);
+    for (int i = 0; i < size; i++) {
+        if (cpus[i] >= 0 && cpus[i] < CPU_SETSIZE) {
+            CPU_SET(cpus[i], &mask);
+        }
+    }
+    env->ReleaseIntArrayElements(cpus_, cpus, JNI_ABORT);
+
+    // pid 0 is the calling thread, threads it creates later inherit the mask
+    if (sched_setaffinity(0, sizeof(mask), &mask) != 0) {
+        return errno;
+    }
+    return 0;
+}
+
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeGetHostMirrorStats(JNIEnv *env, jclass type,
+                                                                          jlong sessionPtr) {
+    jlong stats[3] = {0, 0, 0};
+    {
+        std::lock_guard<std::mutex> lock(gHostMirrorMutex);
+        auto cache = gHostMirrors.find(sessionPtr);
+        if (cache != gHostMirrors.end()) {
+            stats[0] = cache->second.hits;
+            stats[1] = cache->second.misses;
+            stats[2] = (jlong) cache->second.mirrors.size();
+        }
+    }
+    jlongArray result = env->NewLongArray(3);
+    env->SetLongArrayRegion(result, 0, 3, stats);
+    return result;
+}
+
+// Samples of one op over all profiled iterations.
+struct OpSamples {
+    std::string name;
+    std::string type;
+    std::vector<jlong> nanos;
+    jlong total = 0;
+};
+
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_example_mobileneuralnetwork_mnn_MNNNative_nativeProfileSession(JNIEnv *env, jclass type,
+                                                                      jlong netPtr,
+                                                                      jlong sessionPtr,
+                                                                      jint iterations) {
+    auto net = (MNN::Interpreter *) netPtr;
+    auto session = (MNN::Session *) sessionPtr;
+
+    // Everything stays native while running, Java only gets the aggregated table
+    std::vector<OpSamples> ops;
+    std::map<std::string, size_t> indices;
+    jlong opStart = 0;
+
+    MNN::TensorCallBackWithInfo beforeCallBack = [&](const std::vector<MNN::Tensor *> &ntensors,
+                                                     const MNN::OperatorInfo *info) {
+        opStart = monotonicNanos();
+        return true;
+    };
+
+    MNN::TensorCallBackWithInfo afterCallBack = [&](const std::vector<MNN::Tensor *> &ntensors,
+                                                    const MNN::OperatorInfo *info) {
+        jlong elapsed = monotonicNanos() - opStart;
+        auto index = indices.find(info->name());
+        if (index == indices.end()) {
+            index = indices.emplace(info->name(), ops.size()).first;
+            ops.emplace_back();
+            ops.back().name = info->name();
+            ops.back().type = info->type();
+            ops.back().nanos.reserve(iterations);
+        }
+        auto &op = ops[index->second];
+        op.nanos.push_back(elapsed);
+        op.total += elapsed;
+        return true;
+    };
+
+    for (int i = 0; i < iterations; i++) {
+        if (net->runSessionWithCallBackInfo(session, beforeCallBack, afterCallBack, true) != MNN::NO_ERROR) {
+            MNN_ERROR("Profile run %d failed", i);
+            return nullptr;
+        }
+    }
+
+    jlong total = 0;
+    for (auto &op : ops) {
+        total += op.total;
+    }
+    std::sort(ops.begin(), ops.end(), [](const OpSamples &a, const OpSamples &b) {
+        return a.total > b.total;
+    });
+
+    jclass profileClass = env->FindClass("com/example/mobileneuralnetwork/mnn/MNNInstance$OpProfile");
+    jmethodID constructor = env->GetMethodID(profileClass, "<init>",
+                                             "(Ljava/lang/String;Ljava/lang/String;IDDD)V");
+    jobjectArray result = env->NewObjectArray((jsize) ops.size(), profileClass, nullptr);
+    for (size_t i = 0; i < ops.size(); i++) {
+        auto &op = ops[i];
+        auto count = op.nanos.size();
+        double mean = (double) op.total / count;
+        // Nearest rank 99th percentile
+        size_t rank = (size_t) std::ceil(0.99 * count) - 1;
+        std::nth_element(op.nanos.begin(), op.nanos.begin() + rank, op.nanos.end());
+        double p99 = (double) op.nanos[rank];
+        double share = total > 0 ? (double) op.total / total : 0;
+
+        jstring name = env->NewStringUTF(op.name.c_str());
+        jstring opType = env->NewStringUTF(op.type.c_str());
+        jobject profile = env->NewObject(profileClass, constructor, name, opType, (jint) count, mean, p99,
+                                         share);
+        env->SetObjectArrayElement(result, (jsize) i, profile);
+        env->DeleteLocalRef(profile);
+        env->DeleteLocalRef(opType);
+        env->DeleteLocalRef(name);
+    }
+    return result;
+}
@@ -0,0 +1,54 @@
+package com.example.mobileneuralnetwork;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.benchmark.InputCache;
+import com.example.benchmark.TensorFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Decodes and resizes an image asset into RGBA pixels for the input cache, MNN converts them natively.
+public class AssetInputLoader implements InputCache.Loader {
+
+    private final AssetManager assetManager;
+
+    public AssetInputLoader(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    @Override
+    public void load(String inputPath, TensorFormat format, ByteBuffer dest) throws IOException {
+        if (format.layout != TensorFormat.Layout.NHWC || format.dataType != TensorFormat.DataType.UINT8
+                || format.channels != 4) {
+            throw new IllegalArgumentException("Unsupported input format " + format);
+        }
+        Bitmap bitmap;
+        try (InputStream inputStream = assetManager.open(inputPath)) {
+            bitmap = BitmapFactory.decodeStream(inputStream);
+        }
+        if (bitmap == null) {
+            throw new IOException("Can't decode " + inputPath);
+        }
+        Bitmap resized_bitmap = Bitmap.createScaledBitmap(bitmap, format.width, format.height, true);
+        if (resized_bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            Bitmap converted = resized_bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            recycle(resized_bitmap, bitmap);
+            resized_bitmap = converted;
+        }
+        // ARGB_8888 is stored as R, G, B, A bytes
+        resized_bitmap.copyPixelsToBuffer(dest);
+        recycle(resized_bitmap, bitmap);
+        bitmap.recycle();
+    }
+
+    // createScaledBitmap returns the source itself when the size already matches.
+    private static void recycle(Bitmap bitmap, Bitmap source) {
+        if (bitmap != source) {
+            bitmap.recycle();
+        }
+    }
+}
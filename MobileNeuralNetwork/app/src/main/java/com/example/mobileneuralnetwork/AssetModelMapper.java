@@ -0,0 +1,38 @@
+package com.example.mobileneuralnetwork;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Maps a model asset straight out of the APK. Only works for assets stored uncompressed, see noCompress in build.gradle.
+public class AssetModelMapper {
+
+    private final AssetManager assetManager;
+
+    public AssetModelMapper(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    // Null if the asset is compressed, the caller has to stage it as a file instead.
+    public MappedByteBuffer map(String assetPath) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assetManager.openFd(assetPath);
+        } catch (FileNotFoundException compressed) {
+            // openFd also throws this for compressed assets, open() tells them apart from missing ones
+            assetManager.open(assetPath).close();
+            return null;
+        }
+        // The mapping stays valid after the descriptor is closed
+        try (AssetFileDescriptor fd = descriptor;
+             FileInputStream inputStream = new FileInputStream(fd.getFileDescriptor());
+             FileChannel channel = inputStream.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getDeclaredLength());
+        }
+    }
+}
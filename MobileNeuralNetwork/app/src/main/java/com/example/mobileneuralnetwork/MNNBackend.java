@@ -0,0 +1,139 @@
+package com.example.mobileneuralnetwork;
+
+import android.content.res.AssetManager;
+
+import com.example.benchmark.BatchedBackend;
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.MetricSource;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.ModelStager;
+import com.example.benchmark.TensorFormat;
+import com.example.mobileneuralnetwork.mnn.MNNInstance;
+import com.example.mobileneuralnetwork.mnn.MNNModel;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Loads the model from the mapped asset, or from a private copy if the asset is compressed.
+// The net stays in the registry between runs, with one session per config.
+public class MNNBackend implements BatchedBackend, MetricSource {
+
+    private final AssetManager assetManager;
+    private final InputCache inputCache;
+    private final String modelPath;
+    private final File stagingDir;
+    private final TensorFormat inputFormat;
+    private final MNNInstance.Config config;
+    private final int batchSize;
+    private final ModelRegistry registry;
+
+    private MNNModel mnnModel;
+    // Whether load() found the net, or even the session, in the registry, otherwise how the net was loaded
+    private boolean netReused;
+    private boolean sessionReused;
+    private boolean mapped;
+    private boolean staged;
+
+    public MNNBackend(AssetManager assetManager, InputCache inputCache, String modelPath, File stagingDir,
+                      int inputWidth, int inputHeight, MNNInstance.Config config, ModelRegistry registry) {
+        this(assetManager, inputCache, modelPath, stagingDir, inputWidth, inputHeight, config, 1, registry);
+    }
+
+    public MNNBackend(AssetManager assetManager, InputCache inputCache, String modelPath, File stagingDir,
+                      int inputWidth, int inputHeight, MNNInstance.Config config, int batchSize,
+                      ModelRegistry registry) {
+        this.assetManager = assetManager;
+        this.inputCache = inputCache;
+        this.modelPath = modelPath;
+        this.stagingDir = stagingDir;
+        this.inputFormat = new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.UINT8,
+                inputWidth, inputHeight, 4, TensorFormat.NO_MEAN, TensorFormat.NO_STD);
+        this.config = config.copy();
+        this.batchSize = batchSize;
+        this.registry = registry;
+    }
+
+    @Override
+    public String getName() {
+        return "MNN";
+    }
+
+    @Override
+    public void load() throws Exception {
+        netReused = registry.contains(modelPath);
+        mnnModel = registry.get(modelPath, this::loadModel);
+        sessionReused = mnnModel.hasSession(config, batchSize);
+        mnnModel.useConfig(config, batchSize);
+    }
+
+    private MNNModel loadModel() throws Exception {
+        ByteBuffer model = new AssetModelMapper(assetManager).map(modelPath);
+        mapped = model != null;
+        if (mapped) {
+            return new MNNModel(model, inputFormat.width, inputFormat.height, config);
+        }
+        ModelStager.Staged file = new ModelStager(stagingDir).stage(new File(modelPath).getName(),
+                () -> assetManager.open(modelPath));
+        staged = file.isCopied();
+        return new MNNModel(file.getFile().getPath(), inputFormat.width, inputFormat.height, config);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void prepareInput(String inputPath) throws Exception {
+        if (batchSize > 1) {
+            String[] inputPaths = new String[batchSize];
+            Arrays.fill(inputPaths, inputPath);
+            prepareBatch(inputPaths);
+            return;
+        }
+        mnnModel.setInput(inputCache.get(inputPath, inputFormat), inputFormat.width, inputFormat.height);
+    }
+
+    @Override
+    public void prepareBatch(String[] inputPaths) throws Exception {
+        if (batchSize == 1) {
+            prepareInput(inputPaths[0]);
+            return;
+        }
+        ByteBuffer[] inputs = new ByteBuffer[inputPaths.length];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = inputCache.get(inputPaths[i], inputFormat);
+        }
+        mnnModel.setInputs(inputs, inputFormat.width, inputFormat.height);
+    }
+
+    @Override
+    public void run() throws Exception {
+        mnnModel.run();
+    }
+
+    // Per op latency of the current input, slowest op first. Call between prepareInput() and release().
+    public MNNInstance.OpProfile[] profile(int iterations) {
+        return mnnModel.profile(iterations);
+    }
+
+    @Override
+    public void reportMetrics(BenchmarkResult result) {
+        if (netReused) {
+            result.putMetric("session_reused", sessionReused ? 1 : 0);
+            return;
+        }
+        result.putMetric("model_mapped", mapped ? 1 : 0);
+        if (!mapped) {
+            result.putMetric("model_staged", staged ? 1 : 0);
+        }
+    }
+
+    @Override
+    public void release() {
+        // The model stays in the registry for the next run
+        mnnModel = null;
+    }
+}
@@ -1,30 +1,35 @@
 package com.example.mobileneuralnetwork;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
-
-import android.Manifest;
-import android.content.pm.PackageManager;
-import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+
 import android.os.Bundle;
-import android.os.Environment;
+import android.os.Debug;
+import android.os.Process;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
-import android.widget.Toast;
 
-import com.example.mobileneuralnetwork.mnn.MNNModel;
+import com.example.benchmark.Benchmark;
+import com.example.benchmark.BenchmarkConfig;
+import com.example.benchmark.BenchmarkExecutor;
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.CpuTopology;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.ModelFiles;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.ProgressListener;
+import com.example.benchmark.Sweep;
+import com.example.benchmark.TuningCache;
+import com.example.mobileneuralnetwork.mnn.MNNBackendConfig;
+import com.example.mobileneuralnetwork.mnn.MNNInstance;
+import com.example.mobileneuralnetwork.mnn.MNNThreadAffinity;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -34,142 +39,249 @@ public class MainActivity extends AppCompatActivity {
     private final int       inputWidth      = 128;
     private final int       numThreads      = 4;
     private final int       input_repeat    = 8; // Repeat inputs n times.
-    private final int       exec_time_shift = 4; // Drop first n elements from exec_time.
+    private final int       max_warmup      = 64; // Stop adaptive warmup after n runs.
     private final String    inputFolder     = "inputs";
     private final String    modelFolder     = "models";
     private final String    modelName       = "yolov5s.mnn";
+    private final long      inputCacheBytes = 64L << 20; // Byte budget of preprocessed inputs.
+    private final boolean   pinBigCores     = false; // Pin the benchmark thread and MNN workers to the fastest cores.
+    private final int       profileIterations = 0; // Log per op latencies over n runs after the benchmark, 0 = off.
+
+    // MNN PARAMETERS
+    // Low precision trades accuracy for speed, low memory trades speed for footprint.
+    private final MNNBackendConfig.Precision precision = MNNBackendConfig.Precision.NORMAL;
+    private final MNNBackendConfig.Power power = MNNBackendConfig.Power.NORMAL;
+    private final MNNBackendConfig.Memory memory = MNNBackendConfig.Memory.NORMAL;
+
+    // TUNING PARAMETERS
+    // Sweep the CPU configs once per model and start on the fastest one afterwards, instead of the settings above.
+    // The sweep log lists latency and native peak memory of every mode.
+    private final boolean   autoTune        = true;
+    private final boolean   retune          = false; // Sweep again even if a tuned config is stored.
+    private final int[]     sweepThreads    = {1, 2, 4, Runtime.getRuntime().availableProcessors()};
+    private final MNNBackendConfig.Precision[] sweepPrecisions = {MNNBackendConfig.Precision.NORMAL, MNNBackendConfig.Precision.LOW};
+    private final MNNBackendConfig.Power[] sweepPowers = {MNNBackendConfig.Power.NORMAL};
+    private final MNNBackendConfig.Memory[] sweepMemories = {MNNBackendConfig.Memory.NORMAL, MNNBackendConfig.Memory.LOW};
+    private final String    tuningFile      = "mnn_tuning.properties"; // Inside the files dir.
+
+    // BATCH PARAMETERS
+    // Benchmark the config above once per batch size and report the best images per second.
+    private final boolean   batchSweep      = false;
+    private final List<Integer> sweepBatches = Arrays.asList(1, 2, 4, 8);
 
     // UTILS
     private final DecimalFormat df = new DecimalFormat("#.##");
-    private boolean modelWasLoaded = false;
+    private InputCache inputCache;
+    private TuningCache tuningCache;
+    private String tuningKey; // Worker only, the model can only change with a new APK.
 
-    // PERMISSIONS
-    private static final int PERMISSION_REQUEST_WRITE_STORAGE = 1;
+    // Nets with their sessions, kept between runs
+    private final ModelRegistry registry = new ModelRegistry();
 
-    // ASSETS
-    private final String name_external_folder = "/mnn";
-    private final String path_external_assets = Environment.getExternalStorageDirectory().getAbsolutePath() + name_external_folder;
-    private final String modelPath = path_external_assets + "/" + modelName;
+    // Benchmarks run one at a time on a high priority worker, never on the UI thread
+    private BenchmarkExecutor executor;
+    private BenchmarkExecutor.Handle running;
 
-    // MOBILE NEURAL NETWORK
-    private MNNModel mnnModel;
+    // ASSETS
+    // Mapped straight from the APK, only staged into filesDir if the asset is compressed
+    private final String modelPath = modelFolder + "/" + modelName;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        inputCache = new InputCache(new AssetInputLoader(getAssets()), inputCacheBytes);
+        executor = new BenchmarkExecutor(this::setUpWorker, this::runOnUiThread);
+        tuningCache = new TuningCache(new File(getFilesDir(), tuningFile));
+    }
 
-        // Give the app permission to access storage
-        if (ContextCompat.checkSelfPermission(MainActivity.this,
-                Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(MainActivity.this,
-                    new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, PERMISSION_REQUEST_WRITE_STORAGE);
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The net is mapped again from the APK, without a copy
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // On the worker, so a running benchmark keeps its session
+            executor.execute(this::closeModels);
+            inputCache.clear();
         }
     }
 
-    public double get_mean_seconds(ArrayList<Long> milliseconds) {
-        long sum = 0;
-        for (long millisecond: milliseconds) {
-            sum += millisecond;
+    @Override
+    protected void onDestroy() {
+        if (running != null) {
+            running.cancel();
         }
-        double mean_m = (double) sum / (double) milliseconds.size();
-        return mean_m / 1000;
+        executor.execute(this::closeModels);
+        executor.shutdown();
+        super.onDestroy();
     }
 
-    public double get_mean_fps(ArrayList<Long> milliseconds) {
-        double mean_s = get_mean_seconds(milliseconds);
-        double epsilon = 0.0000001;
-        double fps = -1;
-        if (mean_s > epsilon) {
-            fps = 1 / mean_s;
+    // Close failures are only logged, the registry forgets the models anyway.
+    private void closeModels() {
+        try {
+            registry.closeAll();
+        } catch (Exception exception) {
+            Log.w("closeModels", "closing models failed", exception);
         }
-        return fps;
     }
 
-    private void copyAsset(String directory, String prefix, String filename) {
-        File dir = new File(directory);
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
-        AssetManager assetManager = getAssets();
-        InputStream in = null;
-        OutputStream out = null;
+    private void closeModel(String key) {
         try {
-            in = assetManager.open(prefix + filename);
-            File outFile = new File(directory, filename);
-            out = new FileOutputStream(outFile);
-            copyFile(in, out);
-            Toast.makeText(this, "Assets was successfully copied.", Toast.LENGTH_SHORT).show();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, "Assets was not copied!", Toast.LENGTH_SHORT).show();
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            registry.close(key);
+        } catch (Exception exception) {
+            Log.w("closeModel", "closing " + key + " failed", exception);
         }
+    }
 
+    // Runs on the benchmark thread. MNN creates its workers from it, so they inherit the affinity.
+    private void setUpWorker() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        if (pinBigCores) {
+            int[] cores = CpuTopology.bigCores();
+            boolean pinned = MNNThreadAffinity.pinCurrentThread(cores);
+            Log.d("estimateFps", "big cores " + Arrays.toString(cores) + (pinned ? " pinned" : " not pinned"));
+        }
     }
 
-    private void copyFile(InputStream in, OutputStream out) throws IOException {
-        byte[] buffer = new byte[1024];
-        int read;
+    public double estimateFps() throws Exception {
+        BenchmarkConfig config = createConfig();
+        MNNInstance.Config mnnConfig = autoTune ? tunedConfig() : defaultConfig();
 
-        while ((read = in.read(buffer)) != -1) {
-            out.write(buffer, 0, read);
+        MNNBackend backend = createBackend(mnnConfig);
+        BenchmarkResult result = new Benchmark(config).run(backend);
+        Log.d("estimateFps", mnnConfig + " " + result.format());
+        if (profileIterations > 0 && config.inputs.length > 0) {
+            profileOps(mnnConfig, config.inputs[0]);
         }
+        return result.getFps();
     }
 
-    public double estimateFps() {
-        double fps = -1;
-        try {
-            // Load model
-            if (!modelWasLoaded) {
-                mnnModel = new MNNModel(modelPath, inputWidth, inputHeight, numThreads);
-            }
+    // Returns the images per second of the best batch size, -1 if all of them failed.
+    public double batchFps() throws Exception {
+        final MNNInstance.Config mnnConfig = autoTune ? tunedConfig() : defaultConfig();
+
+        Sweep<Integer> sweep = new Sweep<>(createConfig());
+        sweep.setListener((index, count, entry) -> {
+            Log.d("batchFps", (index + 1) + "/" + count + " " + entry.format());
+            // The reshaped sessions of larger batches are not needed again
+            closeModel(modelPath);
+        });
+        List<Sweep.Entry<Integer>> entries = sweep.run(sweepBatches, batch ->
+                new MNNBackend(getAssets(), inputCache, modelPath, new File(getFilesDir(), modelFolder),
+                        inputWidth, inputHeight, mnnConfig, batch, registry));
 
-            // Init and set list of inputs names.
-            AssetManager assetManager = getAssets();
-            String[] inputs_names = assetManager.list(inputFolder);
+        Sweep.Entry<Integer> best = Sweep.highest(entries, "images_per_s");
+        if (best == null) {
+            return -1;
+        }
+        Log.d("batchFps", mnnConfig + " best: " + best.format());
+        return best.getResult().getMetric("images_per_s");
+    }
 
-            // Init list of execution time.
-            ArrayList<Long> exec_time = new ArrayList<Long>();
+    // The stored config of the model, swept and stored first if there is none.
+    private MNNInstance.Config tunedConfig() throws Exception {
+        String key = tuningKey();
+        String stored = tuningCache.get(key);
+        if (stored != null && !retune) {
+            try {
+                return MNNInstance.Config.parse(stored);
+            } catch (IllegalArgumentException exception) {
+                Log.d("tunedConfig", "ignoring " + stored);
+            }
+        }
 
-            for (int i = 0; i < input_repeat; i++) {
-                for (String input_name: inputs_names) {
-                    Bitmap bitmap = BitmapFactory.decodeStream(getAssets().open(inputFolder + "/" + input_name));
-                    Bitmap resized_bitmap = Bitmap.createScaledBitmap(bitmap, inputWidth, inputHeight, true);
-                    long start = System.currentTimeMillis();
-                    mnnModel.predictImage(resized_bitmap);
-                    long stop = System.currentTimeMillis();
+        Sweep<MNNInstance.Config> sweep = new Sweep<>(createConfig());
+        sweep.setListener((index, count, entry) -> {
+            Log.d("tunedConfig", (index + 1) + "/" + count + " " + entry.format());
+            // Only one candidate in memory at a time, so their memory numbers compare
+            closeModel(modelPath);
+        });
+        List<Sweep.Entry<MNNInstance.Config>> entries = sweep.run(
+                MNNInstance.Config.grid(sweepThreads, sweepPrecisions, sweepPowers, sweepMemories),
+                this::createBackend);
 
-                    exec_time.add(stop - start);
-                }
+        Log.d("tunedConfig", "\n" + Sweep.format(entries));
+        Sweep.Entry<MNNInstance.Config> fastest = Sweep.fastest(entries);
+        if (fastest == null) {
+            return defaultConfig();
+        }
+        tuningCache.put(key, fastest.getCandidate().toString());
+        return fastest.getCandidate();
+    }
+
+    // Path and content hash, so a replaced model with the same name is tuned again.
+    private String tuningKey() throws IOException {
+        if (tuningKey == null) {
+            try (InputStream inputStream = getAssets().open(modelPath)) {
+                tuningKey = modelPath + " " + ModelFiles.sha256(inputStream);
             }
-            exec_time = new ArrayList<Long>(exec_time.subList(exec_time_shift, exec_time.size()));
-            fps = get_mean_fps(exec_time);
+        }
+        return tuningKey;
+    }
 
-        } catch (Exception exception) {
-            Log.d("estimateFps", exception.getMessage());
+    private MNNInstance.Config defaultConfig() {
+        MNNInstance.Config config = new MNNInstance.Config();
+        config.numThread = numThreads;
+        config.precision = precision.mode;
+        config.power = power.mode;
+        config.memory = memory.mode;
+        return config;
+    }
+
+    private BenchmarkConfig createConfig() throws IOException {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = BenchmarkConfig.assetPaths(inputFolder, getAssets().list(inputFolder));
+        config.repeat = input_repeat;
+        config.maxWarmup = max_warmup;
+        config.memoryProbe = Debug::getNativeHeapAllocatedSize;
+        config.progressListener = executor.post(this::showProgress);
+        return config;
+    }
+
+    private void profileOps(MNNInstance.Config mnnConfig, String inputPath) throws Exception {
+        MNNBackend backend = createBackend(mnnConfig);
+        backend.load();
+        try {
+            backend.prepareInput(inputPath);
+            Log.d("profileOps", "\n" + MNNInstance.OpProfile.format(backend.profile(profileIterations)));
+        } finally {
+            backend.release();
         }
-        return fps;
     }
 
-    public void estimateOnClick(View view) {
-        copyAsset(path_external_assets, modelFolder + "/", modelName);
+    private MNNBackend createBackend(MNNInstance.Config mnnConfig) {
+        return new MNNBackend(getAssets(), inputCache, modelPath, new File(getFilesDir(), modelFolder),
+                inputWidth, inputHeight, mnnConfig, registry);
+    }
+
+    private void showProgress(ProgressListener.Phase phase, int done, int total) {
         TextView fps_value = (TextView) findViewById(R.id.fps_value);
-        double fps = estimateFps();
-        fps_value.setText(df.format(fps));
+        fps_value.setText(phase.name().toLowerCase() + " " + done + "/" + total);
+    }
+
+    // Starts a benchmark, or cancels the one that is running.
+    public void estimateOnClick(View view) {
+        final TextView fps_value = (TextView) findViewById(R.id.fps_value);
+        if (running != null && !running.isDone()) {
+            running.cancel();
+            return;
+        }
+        running = executor.submit(() -> batchSweep ? batchFps() : estimateFps(), new BenchmarkExecutor.Callback<Double>() {
+            @Override
+            public void onSuccess(Double fps) {
+                fps_value.setText(df.format(fps));
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                Log.d("estimateFps", "" + exception.getMessage());
+                fps_value.setText(df.format(-1));
+            }
+
+            @Override
+            public void onCancelled() {
+                fps_value.setText("-");
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.example.mobileneuralnetwork.mnn;
+
+//Modes of MNN::BackendConfig, values match the native enums
+public class MNNBackendConfig {
+
+    public enum Precision {
+        NORMAL(0),
+        HIGH(1),
+        /**
+         * fp16 or bf16 where the CPU supports it, e.g. ARMv8.2
+         */
+        LOW(2);
+
+        public int mode;
+
+        Precision(int m) {
+            mode = m;
+        }
+    }
+
+    public enum Power {
+        NORMAL(0),
+        HIGH(1),
+        LOW(2);
+
+        public int mode;
+
+        Power(int m) {
+            mode = m;
+        }
+    }
+
+    public enum Memory {
+        NORMAL(0),
+        HIGH(1),
+        /**
+         * Smaller buffers, e.g. weights are not repacked ahead of time
+         */
+        LOW(2);
+
+        public int mode;
+
+        Memory(int m) {
+            mode = m;
+        }
+    }
+
+    private MNNBackendConfig() {
+    }
+}
@@ -3,6 +3,8 @@ package com.example.mobileneuralnetwork.mnn;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
 
+import java.nio.ByteBuffer;
+
 public class MNNImageProcess {
 
     public enum Format {
@@ -106,6 +108,38 @@ public class MNNImageProcess {
                 config.source.type, config.dest.type, config.filter.type, config.wrap.type, value, config.mean, config.normal);
     }
 
+    // Same as convertBuffer, but reads the pixels in place from a direct buffer.
+    public static boolean convertBuffer(ByteBuffer buffer, int width, int height, MNNInstance.Session.Tensor tensor, Config config, Matrix matrix) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer must be direct");
+        }
+        if (matrix == null) {
+            matrix = new Matrix();
+        }
+        float value[] = new float[9];
+        matrix.getValues(value);
+
+        return MNNNative.nativeConvertDirectBufferToTensor(buffer, width, height, tensor.instance(),
+                config.source.type, config.dest.type, config.filter.type, config.wrap.type, value, config.mean, config.normal);
+    }
+
+    // Same as convertBuffer for a batched tensor, one direct buffer per batch.
+    public static boolean convertBuffers(ByteBuffer[] buffers, int width, int height, MNNInstance.Session.Tensor tensor, Config config, Matrix matrix) {
+        for (ByteBuffer buffer : buffers) {
+            if (!buffer.isDirect()) {
+                throw new IllegalArgumentException("buffers must be direct");
+            }
+        }
+        if (matrix == null) {
+            matrix = new Matrix();
+        }
+        float value[] = new float[9];
+        matrix.getValues(value);
+
+        return MNNNative.nativeConvertDirectBuffersToTensor(buffers, width, height, tensor.sessionInstance(), tensor.instance(),
+                config.source.type, config.dest.type, config.filter.type, config.wrap.type, value, config.mean, config.normal);
+    }
+
     public static boolean convertBitmap(Bitmap sourceBitmap, MNNInstance.Session.Tensor tensor, Config config, Matrix matrix) {
         if (matrix == null) {
             matrix = new Matrix();
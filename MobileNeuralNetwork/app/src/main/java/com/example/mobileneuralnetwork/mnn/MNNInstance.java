@@ -2,6 +2,15 @@ package com.example.mobileneuralnetwork.mnn;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 public class MNNInstance {
     private static final String TAG = MNNInstance.class.getSimpleName();
 
@@ -15,13 +24,161 @@ public class MNNInstance {
         return new MNNInstance(instance);
     }
 
+    //The model is copied by the interpreter, the buffer is not needed after this returns
+    public static MNNInstance createFromBuffer(ByteBuffer model) {
+        if (!model.isDirect()) {
+            throw new IllegalArgumentException("model buffer must be direct");
+        }
+        long instance = MNNNative.nativeCreateNetFromBuffer(model);
+        if (0 == instance) {
+            Log.e(TAG, "Create Net Failed from buffer of " + model.capacity() + " bytes");
+            return null;
+        }
+
+        return new MNNInstance(instance);
+    }
+
+
+    //Latency of one op over the profiled iterations, created by the native profiler
+    public static class OpProfile {
+        public final String name;
+        public final String type;
+        public final int count;
+        public final double meanNanos;
+        public final double p99Nanos;
+        public final double share; // Fraction of the summed time of all ops.
+
+        OpProfile(String name, String type, int count, double meanNanos, double p99Nanos, double share) {
+            this.name = name;
+            this.type = type;
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p99Nanos = p99Nanos;
+            this.share = share;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-40s %-16s mean=%.3fms p99=%.3fms share=%.1f%% n=%d",
+                    name, type, meanNanos / 1e6, p99Nanos / 1e6, share * 100, count);
+        }
+
+        //One line per op
+        public static String format(OpProfile[] profiles) {
+            StringBuilder builder = new StringBuilder();
+            for (OpProfile profile : profiles) {
+                builder.append(profile).append('\n');
+            }
+            return builder.toString();
+        }
+    }
 
     public static class Config {
         public int forwardType = MNNForwardType.FORWARD_CPU.type;
         public int numThread = 4;
         public String[] saveTensors = null;
         public String[] outputTensors = null;
+        //MNN::BackendConfig, see MNNBackendConfig
+        public int precision = MNNBackendConfig.Precision.NORMAL.mode;
+        public int power = MNNBackendConfig.Power.NORMAL.mode;
+        public int memory = MNNBackendConfig.Memory.NORMAL.mode;
+
+        public Config copy() {
+            Config config = new Config();
+            config.forwardType = forwardType;
+            config.numThread = numThread;
+            config.precision = precision;
+            config.power = power;
+            config.memory = memory;
+            config.saveTensors = saveTensors == null ? null : saveTensors.clone();
+            config.outputTensors = outputTensors == null ? null : outputTensors.clone();
+            return config;
+        }
+
+        //Every distinct CPU config of the given thread counts and modes, threads vary slowest
+        public static List<Config> grid(int[] threads, MNNBackendConfig.Precision[] precisions,
+                                        MNNBackendConfig.Power[] powers, MNNBackendConfig.Memory[] memories) {
+            List<Config> configs = new ArrayList<>();
+            for (int numThread : threads) {
+                for (MNNBackendConfig.Precision precision : precisions) {
+                    for (MNNBackendConfig.Power power : powers) {
+                        for (MNNBackendConfig.Memory memory : memories) {
+                            Config config = new Config();
+                            config.forwardType = MNNForwardType.FORWARD_CPU.type;
+                            config.numThread = numThread;
+                            config.precision = precision.mode;
+                            config.power = power.mode;
+                            config.memory = memory.mode;
+                            if (!configs.contains(config)) {
+                                configs.add(config);
+                            }
+                        }
+                    }
+                }
+            }
+            return configs;
+        }
+
+        //Tunable fields only, parse() reads it back
+        @Override
+        public String toString() {
+            return "forward=" + forwardType
+                    + " threads=" + numThread
+                    + " precision=" + precision
+                    + " power=" + power
+                    + " memory=" + memory;
+        }
 
+        //Unknown keys are ignored, missing ones keep their default
+        public static Config parse(String text) {
+            Config config = new Config();
+            for (String part : text.trim().split(" +")) {
+                int split = part.indexOf('=');
+                if (split < 0) {
+                    throw new IllegalArgumentException("Bad config " + text);
+                }
+                String key = part.substring(0, split);
+                int value = Integer.parseInt(part.substring(split + 1));
+                if (key.equals("forward")) {
+                    config.forwardType = value;
+                } else if (key.equals("threads")) {
+                    config.numThread = value;
+                } else if (key.equals("precision")) {
+                    config.precision = value;
+                } else if (key.equals("power")) {
+                    config.power = value;
+                } else if (key.equals("memory")) {
+                    config.memory = value;
+                }
+            }
+            return config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Config config = (Config) o;
+            return forwardType == config.forwardType
+                    && numThread == config.numThread
+                    && precision == config.precision
+                    && power == config.power
+                    && memory == config.memory
+                    && Arrays.equals(saveTensors, config.saveTensors)
+                    && Arrays.equals(outputTensors, config.outputTensors);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = forwardType;
+            result = 31 * result + numThread;
+            result = 31 * result + precision;
+            result = 31 * result + power;
+            result = 31 * result + memory;
+            result = 31 * result + Arrays.hashCode(saveTensors);
+            result = 31 * result + Arrays.hashCode(outputTensors);
+            return result;
+        }
     }
 
     public class Session {
@@ -34,19 +191,24 @@ public class MNNInstance {
                 return mTensorInstance;
             }
 
+            protected long sessionInstance() {
+                return mSessionInstance;
+            }
+
             public void reshape(int[] dims) {
                 MNNNative.nativeReshapeTensor(mNetInstance, mTensorInstance, dims);
-                mData = null;
+                dropCachedData();
+                mMapped = null;
             }
 
             public void setInputIntData(int[] data) {
                 MNNNative.nativeSetInputIntData(mNetInstance, mTensorInstance, data);
-                mData = null;
+                dropCachedData();
             }
 
             public void setInputFloatData(float[] data) {
                 MNNNative.nativeSetInputFloatData(mNetInstance, mTensorInstance, data);
-                mData = null;
+                dropCachedData();
             }
 
             public int[] getDimensions() {
@@ -60,32 +222,69 @@ public class MNNInstance {
 
             public int[] getIntData() {
                 if (null == mIntData) {
-                    int size = MNNNative.nativeTensorGetIntData(mTensorInstance, null);
+                    int size = MNNNative.nativeTensorGetIntData(mSessionInstance, mTensorInstance, null);
                     mIntData = new int[size];
                 }
-                MNNNative.nativeTensorGetIntData(mTensorInstance, mIntData);
+                MNNNative.nativeTensorGetIntData(mSessionInstance, mTensorInstance, mIntData);
 
                 return mIntData;
             }
 
             public void getData() {
                 if (null == mData) {
-                    int size = MNNNative.nativeTensorGetData(mTensorInstance, null);
+                    int size = MNNNative.nativeTensorGetData(mSessionInstance, mTensorInstance, null);
                     mData = new float[size];
                 }
-                MNNNative.nativeTensorGetData(mTensorInstance, mData);
+                MNNNative.nativeTensorGetData(mSessionInstance, mTensorInstance, mData);
             }
 
             public byte[] getUINT8Data() {
                 if (null == mUINT8Data) {
-                    int size = MNNNative.nativeTensorGetUINT8Data(mTensorInstance, null);
+                    int size = MNNNative.nativeTensorGetUINT8Data(mSessionInstance, mTensorInstance, null);
                     mUINT8Data = new byte[size];
                 }
-                MNNNative.nativeTensorGetUINT8Data(mTensorInstance, mUINT8Data);
+                MNNNative.nativeTensorGetUINT8Data(mSessionInstance, mTensorInstance, mUINT8Data);
 
                 return mUINT8Data;
             }
 
+            //The cached arrays have the old size or content after a reshape or a write
+            private void dropCachedData() {
+                mData = null;
+                mIntData = null;
+                mUINT8Data = null;
+            }
+
+            //Zero copy view of the tensor memory in native order, null if it has no plain host layout.
+            //Valid until the tensor or session is reshaped or released.
+            public ByteBuffer mapBuffer() {
+                if (mMapped != null && mMappedAt == mReshapeCount) {
+                    return mMapped;
+                }
+                ByteBuffer mapped = MNNNative.nativeTensorMapBuffer(mTensorInstance);
+                mMapped = mapped == null ? null : mapped.order(ByteOrder.nativeOrder());
+                mMappedAt = mReshapeCount;
+                return mMapped;
+            }
+
+            //Bytes of the tensor in a plain host layout, the size needed by writeFrom and readInto
+            public int getHostByteSize() {
+                return MNNNative.nativeTensorWrapDirectBuffer(mTensorInstance, null, false);
+            }
+
+            //Copy a direct buffer in the tensor type into the tensor, one copy
+            public boolean writeFrom(ByteBuffer buffer) {
+                dropCachedData();
+                return MNNNative.nativeTensorWrapDirectBuffer(mTensorInstance, buffer, true) >= 0;
+            }
+
+            //Copy the tensor into a direct buffer, one copy
+            public boolean readInto(ByteBuffer buffer) {
+                return MNNNative.nativeTensorWrapDirectBuffer(mTensorInstance, buffer, false) >= 0;
+            }
+
+            private ByteBuffer mMapped = null;
+            private int mMappedAt;
             private float[] mData = null;
             private int[] mIntData = null;
             private byte[] mUINT8Data = null;
@@ -100,23 +299,104 @@ public class MNNInstance {
         //After all input tensors' reshape, call this method
         public void reshape() {
             MNNNative.nativeReshapeSession(mNetInstance, mSessionInstance);
+            mReshapeCount++;
         }
 
         public void run() {
             MNNNative.nativeRunSession(mNetInstance, mSessionInstance);
         }
 
+        //Run and return host copies of the outputs of the named ops. The copies are owned by the session,
+        //reused by the next call with the same names and freed by release()
         public Tensor[] runWithCallback(String[] names) {
-            long[] tensorPtr = new long[names.length];
-
+            List<String> key = Arrays.asList(names);
+            Capture capture = mCaptures.get(key);
+            if (capture == null) {
+                capture = createCapture(names);
+                mCaptures.put(key, capture);
+            }
+            capture.run();
             Tensor[] tensorReturnArray = new Tensor[names.length];
-            MNNNative.nativeRunSessionWithCallback(mNetInstance, mSessionInstance, names, tensorPtr);
             for (int i = 0; i < names.length; i++) {
-                tensorReturnArray[i] = new Tensor(tensorPtr[i]);
+                tensorReturnArray[i] = capture.getTensor(i);
             }
             return tensorReturnArray;
         }
 
+        //Capture the outputs of the named ops into tensors allocated once, close to free them
+        public Capture createCapture(String[] names) {
+            checkValid();
+            return new Capture(MNNNative.nativeCreateCapture(mNetInstance, mSessionInstance, names), names);
+        }
+
+        public class Capture implements AutoCloseable {
+            private long mCaptureInstance;
+            private final String[] mNames;
+
+            private Capture(long ptr, String[] names) {
+                mCaptureInstance = ptr;
+                mNames = names.clone();
+            }
+
+            //Run the session, copying the captured outputs and timing every op
+            public void run() {
+                checkOpen();
+                MNNNative.nativeRunCapture(mCaptureInstance);
+            }
+
+            //Host copy of the output of the index-th name, null if the op did not run. Valid until close()
+            public Tensor getTensor(int index) {
+                checkOpen();
+                long tensorPtr = MNNNative.nativeCaptureGetTensor(mCaptureInstance, index);
+                return tensorPtr == 0 ? null : new Tensor(tensorPtr);
+            }
+
+            public Tensor getTensor(String name) {
+                return getTensor(Arrays.asList(mNames).indexOf(name));
+            }
+
+            //Ops of the last run in execution order, with their times in getOpNanos()
+            public String[] getOpNames() {
+                checkOpen();
+                return MNNNative.nativeCaptureGetOpNames(mCaptureInstance);
+            }
+
+            //Time between the before and after callback of every op of the last run
+            public long[] getOpNanos() {
+                checkOpen();
+                return MNNNative.nativeCaptureGetOpNanos(mCaptureInstance);
+            }
+
+            @Override
+            public void close() {
+                if (mCaptureInstance != 0) {
+                    MNNNative.nativeReleaseCapture(mCaptureInstance);
+                    mCaptureInstance = 0;
+                }
+            }
+
+            private void checkOpen() {
+                if (mCaptureInstance == 0) {
+                    throw new IllegalStateException("Capture is closed");
+                }
+            }
+        }
+
+        //Run the session iterations times, timing every op natively. Slowest op first
+        public OpProfile[] profile(int iterations) {
+            checkValid();
+            OpProfile[] profiles = MNNNative.nativeProfileSession(mNetInstance, mSessionInstance, iterations);
+            if (profiles == null) {
+                throw new RuntimeException("Profile session fail");
+            }
+            return profiles;
+        }
+
+        //Host mirror cache counters: {hits, misses, cached mirrors}
+        public long[] getHostMirrorStats() {
+            return MNNNative.nativeGetHostMirrorStats(mSessionInstance);
+        }
+
         public Tensor getInput(String name) {
             long tensorPtr = MNNNative.nativeGetSessionInput(mNetInstance, mSessionInstance, name);
             if (0 == tensorPtr) {
@@ -138,11 +418,23 @@ public class MNNInstance {
         //Release the session from net instance, it's not needed if you call net.release()
         public void release() {
             checkValid();
+            closeCaptures();
+            mSessions.remove(this);
             MNNNative.nativeReleaseSession(mNetInstance, mSessionInstance);
             mSessionInstance = 0;
         }
 
+        private void closeCaptures() {
+            for (Capture capture : mCaptures.values()) {
+                capture.close();
+            }
+            mCaptures.clear();
+        }
+
         private long mSessionInstance = 0;
+        private final Map<List<String>, Capture> mCaptures = new HashMap<>();
+        //Tensor memory may move on reshape, mapped buffers check it
+        private int mReshapeCount = 0;
     }
 
     public Session createSession(Config config) {
@@ -152,12 +444,15 @@ public class MNNInstance {
             config = new Config();
         }
 
-        long sessionId = MNNNative.nativeCreateSession(mNetInstance, config.forwardType, config.numThread, config.saveTensors, config.outputTensors);
+        long sessionId = MNNNative.nativeCreateSession(mNetInstance, config.forwardType, config.numThread,
+                config.precision, config.power, config.memory, config.saveTensors, config.outputTensors);
         if (0 == sessionId) {
             Log.e(TAG, "Create Session Error");
             return null;
         }
-        return new Session(sessionId);
+        Session session = new Session(sessionId);
+        mSessions.add(session);
+        return session;
     }
 
     private void checkValid() {
@@ -169,6 +464,11 @@ public class MNNInstance {
 
     public void release() {
         checkValid();
+        // Sessions are released with the net, their captures are not
+        for (Session session : mSessions) {
+            session.closeCaptures();
+        }
+        mSessions.clear();
         MNNNative.nativeReleaseNet(mNetInstance);
         mNetInstance = 0;
     }
@@ -178,4 +478,5 @@ public class MNNInstance {
     }
 
     private long mNetInstance;
+    private final List<Session> mSessions = new ArrayList<>();
 }
\ No newline at end of file
@@ -7,47 +7,98 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
-public class MNNModel {
+// Owns one net and a session per config, close() releases both.
+public class MNNModel implements AutoCloseable {
 
     private static final String TAG = MNNModel.class.getName();
 
     private MNNInstance mInstance;
+    private MNNSessionManager mSessions;
+    private MNNInstance.Config mConfig;
+    private int mBatch;
     private MNNInstance.Session mSession;
     private MNNInstance.Session.Tensor mInputTensor;
+    private final Map<String, MNNInstance.Session.Tensor> mOutputTensors = new HashMap<>();
+    private final Map<String, ByteBuffer> mOutputCopies = new HashMap<>();
     private MNNImageProcess.Config dataConfig;
     private Matrix imgData;
     int inputHeight;
     int inputWidth;
-    int numThreads;
 
-    public MNNModel(String modelPath, int width, int height, int threads) throws Exception {
+    public MNNModel(String modelPath, int width, int height, MNNInstance.Config config) throws Exception {
+        this(width, height);
+
+        File file = new File(modelPath);
+        if (!file.exists()) {
+            throw new Exception("model file is not exists!");
+        }
+        init(MNNInstance.createFromFile(modelPath), config);
+    }
+
+    // Model bytes in a direct buffer, e.g. a mapped asset. The buffer can be dropped afterwards.
+    public MNNModel(ByteBuffer model, int width, int height, MNNInstance.Config config) throws Exception {
+        this(width, height);
+        init(MNNInstance.createFromBuffer(model), config);
+    }
+
+    private MNNModel(int width, int height) {
         dataConfig = new MNNImageProcess.Config();
         inputWidth = width;
         inputHeight = height;
-        numThreads = threads;
         dataConfig.dest = MNNImageProcess.Format.RGB;
         imgData = new Matrix();
+    }
 
-        File file = new File(modelPath);
-        if (!file.exists()) {
-            throw new Exception("model file is not exists!");
+    private void init(MNNInstance instance, MNNInstance.Config config) throws Exception {
+        if (instance == null) {
+            throw new Exception("load model fail!");
         }
-
+        mInstance = instance;
+        mSessions = new MNNSessionManager(instance);
         try {
-            mInstance = MNNInstance.createFromFile(modelPath);
-            MNNInstance.Config config = new MNNInstance.Config();
-            config.numThread = numThreads;
-            config.forwardType = MNNForwardType.FORWARD_CPU.type;
-            mSession = mInstance.createSession(config);
-            mInputTensor = mSession.getInput(null);
+            useConfig(config);
         } catch (Exception e) {
-            e.printStackTrace();
-            throw new Exception("load model fail!");
+            release();
+            throw e;
         }
     }
 
+    // Switch to the session of config, created on first use. Inputs have to be set again afterwards.
+    public void useConfig(MNNInstance.Config config) throws Exception {
+        useConfig(config, 1);
+    }
+
+    // Same for a batch of images, the input is reshaped once per config and batch size.
+    public void useConfig(MNNInstance.Config config, int batch) throws Exception {
+        if (config.equals(mConfig) && batch == mBatch) {
+            return;
+        }
+        MNNInstance.Session session = mSessions.get(config, batch);
+        if (session == null) {
+            throw new Exception("create session fail! " + config);
+        }
+        mSession = session;
+        mConfig = config.copy();
+        mBatch = batch;
+        mInputTensor = mSession.getInput(null);
+        mOutputTensors.clear();
+        mOutputCopies.clear();
+    }
+
+    public boolean hasSession(MNNInstance.Config config) {
+        return mSessions.contains(config);
+    }
+
+    public boolean hasSession(MNNInstance.Config config, int batch) {
+        return mSessions.contains(config, batch);
+    }
+
     public void predictImage(String image_path) throws Exception {
         if (!new File(image_path).exists()) {
             throw new Exception("image file is not exists!");
@@ -69,11 +120,98 @@ public class MNNModel {
         //imgData.postScale(inputWidth / (float) bmp.getWidth(), inputHeight / (float) bmp.getHeight());
         imgData.invert(imgData);
         MNNImageProcess.convertBitmap(bmp, mInputTensor, dataConfig, imgData);
+        run();
+    }
 
+    // Convert RGBA pixels from a direct buffer into the input tensor, without running the session.
+    public void setInput(ByteBuffer rgba, int width, int height) throws Exception {
+        imgData.reset();
+        if (!MNNImageProcess.convertBuffer(rgba, width, height, mInputTensor, dataConfig, imgData)) {
+            throw new Exception("convert input fail!");
+        }
+    }
+
+    // One RGBA image per batch, converted into the batched input in one pass.
+    public void setInputs(ByteBuffer[] rgba, int width, int height) throws Exception {
+        if (rgba.length != mBatch) {
+            throw new Exception("need " + mBatch + " inputs, got " + rgba.length);
+        }
+        imgData.reset();
+        if (!MNNImageProcess.convertBuffers(rgba, width, height, mInputTensor, dataConfig, imgData)) {
+            throw new Exception("convert input fail!");
+        }
+    }
+
+    // Raw input in the tensor type, e.g. preprocessed floats, copied once from a direct buffer.
+    public void setInputData(ByteBuffer data) throws Exception {
+        if (!mInputTensor.writeFrom(data)) {
+            throw new Exception("set input fail!");
+        }
+    }
+
+    // Output in native order. The tensor memory itself when it is host accessible, otherwise one copy
+    // into a direct buffer reused between calls. Valid until the next run.
+    public ByteBuffer getOutput(String name) throws Exception {
+        MNNInstance.Session.Tensor tensor = mOutputTensors.get(name);
+        if (tensor == null) {
+            tensor = mSession.getOutput(name);
+            if (tensor == null) {
+                throw new Exception("no output " + name);
+            }
+            mOutputTensors.put(name, tensor);
+        }
+        ByteBuffer mapped = tensor.mapBuffer();
+        if (mapped != null) {
+            mapped.rewind();
+            return mapped;
+        }
+        ByteBuffer copy = mOutputCopies.get(name);
+        if (copy == null) {
+            copy = ByteBuffer.allocateDirect(tensor.getHostByteSize()).order(ByteOrder.nativeOrder());
+            mOutputCopies.put(name, copy);
+        }
+        copy.rewind();
+        if (!tensor.readInto(copy)) {
+            throw new Exception("read output fail!");
+        }
+        return copy;
+    }
+
+    // Per op latency of the current input, slowest op first.
+    public MNNInstance.OpProfile[] profile(int iterations) {
+        return mSession.profile(iterations);
+    }
+
+    // {hits, misses, cached mirrors} of the native host mirror cache used by the array getters.
+    public long[] getHostMirrorStats() {
+        return mSession.getHostMirrorStats();
+    }
+
+    public void run() throws Exception {
         try {
             mSession.run();
         } catch (Exception e) {
             throw new Exception("predict image fail! log:" + e);
         }
     }
-}
\ No newline at end of file
+
+    public void release() {
+        if (mInstance != null) {
+            // Frees the sessions too
+            mInstance.release();
+            mInstance = null;
+        }
+        mSessions = null;
+        mConfig = null;
+        mBatch = 0;
+        mSession = null;
+        mInputTensor = null;
+        mOutputTensors.clear();
+        mOutputCopies.clear();
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
@@ -2,6 +2,8 @@ package com.example.mobileneuralnetwork.mnn;
 
 import android.graphics.Bitmap;
 
+import java.nio.ByteBuffer;
+
 public class MNNNative {
     private static final String TAG = MNNNative.class.getName();
 
@@ -12,17 +14,38 @@ public class MNNNative {
     //Net
     protected static native long nativeCreateNetFromFile(String modelName);
 
+    //Whole model in a direct buffer, e.g. a mapped asset
+    protected static native long nativeCreateNetFromBuffer(ByteBuffer model);
+
     protected static native long nativeReleaseNet(long netPtr);
 
 
     //Session
-    protected static native long nativeCreateSession(long netPtr, int forwardType, int numThread, String[] saveTensors, String[] outputTensors);
+    //precision, power and memory are MNN::BackendConfig modes
+    protected static native long nativeCreateSession(long netPtr, int forwardType, int numThread,
+                                                     int precision, int power, int memory,
+                                                     String[] saveTensors, String[] outputTensors);
 
     protected static native void nativeReleaseSession(long netPtr, long sessionPtr);
 
     protected static native int nativeRunSession(long netPtr, long sessionPtr);
 
-    protected static native int nativeRunSessionWithCallback(long netPtr, long sessionPtr, String[] nameArray, long[] tensorAddr);
+    //Capture
+    protected static native long nativeCreateCapture(long netPtr, long sessionPtr, String[] names);
+
+    protected static native int nativeRunCapture(long capturePtr);
+
+    //0 until the named op ran
+    protected static native long nativeCaptureGetTensor(long capturePtr, int index);
+
+    protected static native String[] nativeCaptureGetOpNames(long capturePtr);
+
+    protected static native long[] nativeCaptureGetOpNanos(long capturePtr);
+
+    protected static native void nativeReleaseCapture(long capturePtr);
+
+    //Per op statistics over the iterations, slowest op first
+    protected static native MNNInstance.OpProfile[] nativeProfileSession(long netPtr, long sessionPtr, int iterations);
 
     protected static native int nativeReshapeSession(long netPtr, long sessionPtr);
 
@@ -41,12 +64,22 @@ public class MNNNative {
     protected static native void nativeSetInputFloatData(long netPtr, long tensorPtr, float[] data);
 
 
-    //If dest is null, return length
-    protected static native int nativeTensorGetData(long tensorPtr, float[] dest);
+    //If dest is null, return length. Device data is copied through host mirrors cached per session
+    protected static native int nativeTensorGetData(long sessionPtr, long tensorPtr, float[] dest);
+
+    protected static native int nativeTensorGetIntData(long sessionPtr, long tensorPtr, int[] dest);
+
+    protected static native int nativeTensorGetUINT8Data(long sessionPtr, long tensorPtr, byte[] dest);
+
+    //{hits, misses, cached mirrors} of the session host mirror cache
+    protected static native long[] nativeGetHostMirrorStats(long sessionPtr);
 
-    protected static native int nativeTensorGetIntData(long tensorPtr, int[] dest);
+    //Direct buffer over the tensor host memory, null if it is not host accessible in a plain layout
+    protected static native ByteBuffer nativeTensorMapBuffer(long tensorPtr);
 
-    protected static native int nativeTensorGetUINT8Data(long tensorPtr, byte[] dest);
+    //Copy a direct buffer into the tensor if write, else the tensor into the buffer.
+    //Returns the copied bytes, -1 on failure. If buffer is null, return the needed bytes
+    protected static native int nativeTensorWrapDirectBuffer(long tensorPtr, ByteBuffer buffer, boolean write);
 
 
     //ImageProcess
@@ -55,4 +88,14 @@ public class MNNNative {
     protected static native boolean nativeConvertBufferToTensor(byte[] bufferData, int width, int height, long tensorPtr,
                                                                 int srcFormat, int destFormat, int filterType, int wrap, float[] matrixValue, float[] mean, float[] normal);
 
-}
\ No newline at end of file
+    protected static native boolean nativeConvertDirectBufferToTensor(ByteBuffer buffer, int width, int height, long tensorPtr,
+                                                                      int srcFormat, int destFormat, int filterType, int wrap, float[] matrixValue, float[] mean, float[] normal);
+
+    //One buffer per batch of the tensor, staged in memory cached with the session
+    protected static native boolean nativeConvertDirectBuffersToTensor(ByteBuffer[] buffers, int width, int height, long sessionPtr, long tensorPtr,
+                                                                       int srcFormat, int destFormat, int filterType, int wrap, float[] matrixValue, float[] mean, float[] normal);
+
+    //Thread
+    protected static native int nativeSetThreadAffinity(int[] cpus);
+
+}
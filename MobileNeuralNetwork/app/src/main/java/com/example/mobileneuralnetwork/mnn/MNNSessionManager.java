@@ -0,0 +1,76 @@
+package com.example.mobileneuralnetwork.mnn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Keeps one session per config and batch size of a net, so switching between them does not reload the
+//model or reshape again
+public class MNNSessionManager {
+
+    private final MNNInstance mInstance;
+    private final Map<List<Object>, MNNInstance.Session> mSessions = new HashMap<>();
+
+    public MNNSessionManager(MNNInstance instance) {
+        mInstance = instance;
+    }
+
+    //Batch size of the model file
+    public MNNInstance.Session get(MNNInstance.Config config) {
+        return get(config, 1);
+    }
+
+    //Created on first use, null if MNN can't create a session for the config.
+    //For batch > 1 the input is reshaped once, when the session is created
+    public MNNInstance.Session get(MNNInstance.Config config, int batch) {
+        MNNInstance.Session session = mSessions.get(key(config, batch));
+        if (session == null) {
+            session = mInstance.createSession(config);
+            if (session == null) {
+                return null;
+            }
+            if (batch > 1) {
+                MNNInstance.Session.Tensor input = session.getInput(null);
+                int[] dims = input.getDimensions();
+                dims[0] = batch;
+                input.reshape(dims);
+                session.reshape();
+            }
+            //Configs are mutable, the key must not change
+            mSessions.put(key(config.copy(), batch), session);
+        }
+        return session;
+    }
+
+    public boolean contains(MNNInstance.Config config) {
+        return contains(config, 1);
+    }
+
+    public boolean contains(MNNInstance.Config config, int batch) {
+        return mSessions.containsKey(key(config, batch));
+    }
+
+    public int size() {
+        return mSessions.size();
+    }
+
+    public void release(MNNInstance.Config config, int batch) {
+        MNNInstance.Session session = mSessions.remove(key(config, batch));
+        if (session != null) {
+            session.release();
+        }
+    }
+
+    //Sessions only, the net stays alive
+    public void releaseAll() {
+        for (MNNInstance.Session session : mSessions.values()) {
+            session.release();
+        }
+        mSessions.clear();
+    }
+
+    private static List<Object> key(MNNInstance.Config config, int batch) {
+        return Arrays.<Object>asList(config, Math.max(batch, 1));
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.mobileneuralnetwork.mnn;
+
+import android.util.Log;
+
+public class MNNThreadAffinity {
+    private static final String TAG = MNNThreadAffinity.class.getSimpleName();
+
+    // Pin the calling thread to the given cores. Sessions created afterwards on this thread
+    // start their worker threads with the same mask.
+    public static boolean pinCurrentThread(int[] cpus) {
+        if (cpus == null || cpus.length == 0) {
+            return false;
+        }
+        int error = MNNNative.nativeSetThreadAffinity(cpus);
+        if (error != 0) {
+            Log.w(TAG, "sched_setaffinity failed with errno " + error);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.tflite;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.benchmark.InputCache;
+import com.example.benchmark.PixelConverter;
+import com.example.benchmark.TensorFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Decodes an image asset and resizes it straight into the cache's tensor, in one bilinear pass that also
+// quantizes or normalizes. The converter and the pixel array are reused across inputs.
+public class AssetInputLoader implements InputCache.Loader {
+
+    private final AssetManager assetManager;
+
+    private PixelConverter converter;
+    private TensorFormat converterFormat;
+    private int[] pixels;
+
+    public AssetInputLoader(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    @Override
+    public void load(String inputPath, TensorFormat format, ByteBuffer dest) throws IOException {
+        Bitmap bitmap;
+        try (InputStream inputStream = assetManager.open(inputPath)) {
+            bitmap = BitmapFactory.decodeStream(inputStream);
+        }
+        if (bitmap == null) {
+            throw new IOException("Can't decode " + inputPath);
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        converterFor(format).convertScaled(pixels, width, height, dest);
+    }
+
+    private PixelConverter converterFor(TensorFormat format) {
+        if (!format.equals(converterFormat)) {
+            converter = new PixelConverter(format);
+            converterFormat = format;
+        }
+        return converter;
+    }
+}
@@ -2,131 +2,192 @@ package com.example.tflite;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import android.content.Context;
-import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.os.Process;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 
-import org.tensorflow.lite.DataType;
-import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
-
+import com.example.benchmark.Benchmark;
+import com.example.benchmark.BenchmarkConfig;
+import com.example.benchmark.BenchmarkExecutor;
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.ProgressListener;
+import com.example.benchmark.Sweep;
+
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
 
     // PARAMETERS
     // CUSTOMIZE HERE
     private final int       input_repeat    = 4; // Repeat inputs n times.
-    private final int       exec_time_shift = 4; // Drop first n elements from exec_time.
+    private final int       max_warmup      = 64; // Stop adaptive warmup after n runs.
     private final int       inputHeight     = 128;
     private final int       inputWidth      = 128;
-    private final String    modelPath       = "models/yolov5s-fp16.tflite";
+    private final String    modelPath       = "models/yolov5s-fp16.tflite"; // Input type is read from the model, e.g. UINT8 for mobilenet_v2_1.0_224_quant.
+    private final long      inputCacheBytes = 64L << 20; // Byte budget of preprocessed inputs.
+    private final boolean   prefetchModel   = false; // Read every model page in before the first run.
+
+    // TFLITE PARAMETERS
     private final int       threads         = 4;
-    private final DataType  modelDtype      = DataType.FLOAT32; // [quant = UIN8; default = FLOAT32]
+    private final boolean   xnnpack         = false;
+    private final boolean   fp16            = false; // Allow fp16 math for fp32 models.
+    private final boolean   bufferHandleOutput = false;
+
+    // SWEEP PARAMETERS
+    // Benchmark every combination instead of the single setting above and export a comparison table.
+    private final boolean   sweep           = false;
+    private final int[]     sweepThreads    = TFLiteOptions.threadRange(); // 1 to the number of cores.
+    private final boolean[] sweepXnnpacks   = {false, true};
+    private final boolean[] sweepFp16s      = {false, true};
+    private final boolean[] sweepBufferHandleOutputs = {false};
+    private final String    sweepTable      = "tflite_sweep.csv"; // Inside the app's external files dir.
 
     // ASSETS
     private final String inputFolder = "inputs";
 
     // UTILS
     private final DecimalFormat df = new DecimalFormat("#.###");
+    private InputCache inputCache;
+    private final ModelRegistry registry = new ModelRegistry();
+
+    // Benchmarks run one at a time on a high priority worker, never on the UI thread
+    private BenchmarkExecutor executor;
+    private BenchmarkExecutor.Handle running;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        inputCache = new InputCache(new AssetInputLoader(getAssets()), inputCacheBytes);
+        executor = new BenchmarkExecutor(
+                () -> Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY), this::runOnUiThread);
     }
 
-    public double get_mean_seconds(ArrayList<Long> milliseconds) {
-        long sum = 0;
-        for (long millisecond: milliseconds) {
-            sum += millisecond;
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // On the worker, so a running benchmark never loses its interpreter
+            executor.execute(this::close_models);
+            inputCache.clear();
         }
-        double mean_m = (double) sum / (double) milliseconds.size();
-        return mean_m / 1000;
     }
 
-    public double get_mean_fps(ArrayList<Long> milliseconds) {
-        double mean_s = get_mean_seconds(milliseconds);
-        double epsilon = 0.0000001;
-        double fps = -1;
-        if (mean_s > epsilon) {
-            fps = 1 / mean_s;
+    @Override
+    protected void onDestroy() {
+        if (running != null) {
+            running.cancel();
         }
-        return fps;
+        executor.execute(this::close_models);
+        executor.shutdown();
+        super.onDestroy();
     }
 
-    public  double estimate_fps() {
-        double fps = -1;
+    // Close failures are only logged, the registry forgets the models anyway.
+    private void close_models() {
         try {
+            registry.closeAll();
+        } catch (Exception exception) {
+            Log.w("close_models", "closing models failed", exception);
+        }
+    }
 
-            // Load model file to byte buffer
-            Context context = getApplicationContext();
-            MappedByteBuffer mappedByteBuffer = FileUtil.loadMappedFile(context, modelPath);
-
-            // Create interpreter
-            Interpreter.Options options = new Interpreter.Options();
-
-            // Set number of threads
-            options.setNumThreads(threads);
-
-            // Setup interpreter
-            Interpreter interpreter = new Interpreter(mappedByteBuffer, options);
-
-            AssetManager assetManager = getAssets();
-            String[] images_names = assetManager.list(inputFolder);
-
-            // Image pre-processor
-            ImageProcessor imageProcessor = new ImageProcessor.Builder().add(
-                    new ResizeOp(inputHeight, inputWidth, ResizeOp.ResizeMethod.BILINEAR)
-            ).build();
+    public double estimate_fps() throws Exception {
+        BenchmarkConfig config = create_config();
+        TFLiteOptions options = new TFLiteOptions();
+        options.threads = threads;
+        options.xnnpack = xnnpack;
+        options.fp16 = fp16;
+        options.bufferHandleOutput = bufferHandleOutput;
+
+        TFLiteBackend backend = new TFLiteBackend(getApplicationContext(), inputCache, modelPath,
+                inputWidth, inputHeight, options, prefetchModel, registry);
+        BenchmarkResult result = new Benchmark(config).run(backend);
+        Log.d("estimate_fps", options + " " + result.format());
+        return result.getFps();
+    }
 
-            // execution time list
-            ArrayList<Long> exec_time = new ArrayList<Long>();
-            for (int i = 0; i < input_repeat; i++){
-                for (String image_name : images_names) {
+    // Returns the fps of the fastest combination, -1 if all of them failed.
+    public double sweep_fps() throws Exception {
+        List<TFLiteOptions> candidates = TFLiteOptions.grid(sweepThreads, sweepXnnpacks, sweepFp16s,
+                sweepBufferHandleOutputs);
+
+        Sweep<TFLiteOptions> sweep = new Sweep<>(create_config());
+        sweep.setListener((index, count, entry) -> {
+            Log.d("sweep_fps", (index + 1) + "/" + count + " " + entry.format());
+            // Keep only one candidate interpreter in memory at a time
+            close_models();
+        });
+        List<Sweep.Entry<TFLiteOptions>> entries = sweep.run(candidates, candidate ->
+                new TFLiteBackend(getApplicationContext(), inputCache, modelPath,
+                        inputWidth, inputHeight, candidate, prefetchModel, registry));
+
+        Log.d("sweep_fps", "\n" + Sweep.format(entries));
+        export_table(Sweep.csv(entries));
+        Sweep.Entry<TFLiteOptions> fastest = Sweep.fastest(entries);
+        if (fastest == null) {
+            return -1;
+        }
+        Log.d("sweep_fps", "fastest: " + fastest.format());
+        return fastest.getResult().getFps();
+    }
 
-                    TensorBuffer outputs = TensorBuffer.createFixedSize(interpreter.getOutputTensor(0).shape(), DataType.FLOAT32);
+    // Pull it with adb, no storage permission needed.
+    private void export_table(String csv) throws IOException {
+        File file = new File(getExternalFilesDir(null), sweepTable);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(csv);
+        }
+        Log.d("sweep_fps", "table written to " + file);
+    }
 
-                    // Load image
-                    TensorImage tensorImage = new TensorImage(modelDtype);
-                    Bitmap bitmap = BitmapFactory.decodeStream(getAssets().open(
-                            inputFolder + "/" + image_name));
+    private BenchmarkConfig create_config() throws IOException {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = BenchmarkConfig.assetPaths(inputFolder, getAssets().list(inputFolder));
+        config.repeat = input_repeat;
+        config.maxWarmup = max_warmup;
+        config.progressListener = executor.post(this::show_progress);
+        return config;
+    }
 
-                    // Pre-process loaded image
-                    tensorImage.load(bitmap);
-                    tensorImage = imageProcessor.process(tensorImage);
+    private void show_progress(ProgressListener.Phase phase, int done, int total) {
+        TextView fps_value = (TextView) findViewById(R.id.fps_value);
+        fps_value.setText(phase.name().toLowerCase() + " " + done + "/" + total);
+    }
 
-                    // inference
-                    long start = System.currentTimeMillis();
-                    interpreter.run(tensorImage.getBuffer(), outputs.getBuffer());
-                    long stop = System.currentTimeMillis();
+    // Starts a benchmark, or cancels the one that is running.
+    public void estimate_on_click(View view) {
+        final TextView fps_value = (TextView) findViewById(R.id.fps_value);
+        if (running != null && !running.isDone()) {
+            running.cancel();
+            return;
+        }
+        running = executor.submit(() -> sweep ? sweep_fps() : estimate_fps(), new BenchmarkExecutor.Callback<Double>() {
+            @Override
+            public void onSuccess(Double fps) {
+                fps_value.setText(df.format(fps));
+            }
 
-                    exec_time.add(stop - start);
-                }
+            @Override
+            public void onFailure(Exception exception) {
+                Log.d("estimate_fps", "" + exception.getMessage());
+                fps_value.setText(df.format(-1));
             }
-            exec_time = new ArrayList<Long>(exec_time.subList(exec_time_shift, exec_time.size()));
-            return get_mean_fps(exec_time);
-        } catch (IOException ioException) {
-            Log.d("estimate_on_click", ioException.getMessage());
-        }
-        return fps;
-    }
 
-    public void estimate_on_click(View view) {
-        TextView fps_value = (TextView) findViewById(R.id.fps_value);
-        double fps = estimate_fps();
-        fps_value.setText(df.format(fps));
+            @Override
+            public void onCancelled() {
+                fps_value.setText("-");
+            }
+        });
     }
-}
\ No newline at end of file
+}
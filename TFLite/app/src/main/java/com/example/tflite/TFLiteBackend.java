@@ -0,0 +1,213 @@
+package com.example.tflite;
+
+import android.content.Context;
+
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.InferenceBackend;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.MetricSource;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.PageFaults;
+import com.example.benchmark.Statistics;
+import com.example.benchmark.TensorFormat;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs the model with the TFLite interpreter, mapped straight from its uncompressed asset.
+// Reports the page faults of loading and of the runs, optionally after prefetching the model.
+public class TFLiteBackend implements InferenceBackend, MetricSource {
+
+    private final Context context;
+    private final InputCache inputCache;
+    private final String modelPath;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final TFLiteOptions options;
+    private final ModelRegistry registry;
+    private final boolean prefetchModel;
+
+    private Interpreter interpreter;
+    private boolean reused;
+    // Null if reused or /proc is not readable
+    private PageFaults loadFaults;
+    private PageFaults loadedFaults;
+    private long prefetchNanos;
+    // Read from the model in load(), e.g. UINT8 for quantized models
+    private TensorFormat inputFormat;
+    // Input 0 is the image, further inputs stay zero. Allocated once, bound for every run
+    private Object[] inputs;
+    private ByteBuffer[] outputBuffers;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+
+    public TFLiteBackend(Context context, InputCache inputCache, String modelPath, int inputWidth, int inputHeight,
+                         TFLiteOptions options, ModelRegistry registry) {
+        this(context, inputCache, modelPath, inputWidth, inputHeight, options, false, registry);
+    }
+
+    public TFLiteBackend(Context context, InputCache inputCache, String modelPath, int inputWidth, int inputHeight,
+                         TFLiteOptions options, boolean prefetchModel, ModelRegistry registry) {
+        this.context = context;
+        this.inputCache = inputCache;
+        this.modelPath = modelPath;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.options = options;
+        this.registry = registry;
+        this.prefetchModel = prefetchModel;
+    }
+
+    @Override
+    public String getName() {
+        return "TFLite";
+    }
+
+    @Override
+    public void load() throws Exception {
+        // Interpreters are shared by every run with the same model and options
+        List<Object> key = Arrays.<Object>asList(modelPath, options);
+        reused = registry.contains(key);
+        loadFaults = null;
+        PageFaults before = reused ? null : PageFaults.read();
+        interpreter = registry.get(key, new ModelRegistry.Factory<Interpreter>() {
+            @Override
+            public Interpreter create() throws IOException {
+                return createInterpreter();
+            }
+        });
+
+        inputFormat = createInputFormat(interpreter.getInputTensor(0));
+        inputs = new Object[interpreter.getInputTensorCount()];
+        for (int i = 1; i < inputs.length; i++) {
+            inputs[i] = allocate(interpreter.getInputTensor(i));
+        }
+        // Every output of multi-head models, in its own type
+        outputBuffers = new ByteBuffer[interpreter.getOutputTensorCount()];
+        for (int i = 0; i < outputBuffers.length; i++) {
+            outputBuffers[i] = allocate(interpreter.getOutputTensor(i));
+            outputs.put(i, outputBuffers[i]);
+        }
+
+        loadedFaults = before == null ? null : PageFaults.read();
+        if (loadedFaults != null) {
+            loadFaults = loadedFaults.since(before);
+        }
+    }
+
+    private TensorFormat createInputFormat(Tensor tensor) {
+        TensorFormat.DataType dataType;
+        if (tensor.dataType() == DataType.UINT8) {
+            dataType = TensorFormat.DataType.UINT8;
+        } else if (tensor.dataType() == DataType.FLOAT32) {
+            dataType = TensorFormat.DataType.FLOAT32;
+        } else {
+            throw new IllegalStateException("Unsupported input type " + tensor.dataType());
+        }
+        int[] shape = tensor.shape();
+        if (shape.length != 4 || shape[1] != inputHeight || shape[2] != inputWidth || shape[3] != 3) {
+            throw new IllegalStateException("Input shape " + Arrays.toString(shape) + " is not [1, "
+                    + inputHeight + ", " + inputWidth + ", 3]");
+        }
+        return new TensorFormat(TensorFormat.Layout.NHWC, dataType, inputWidth, inputHeight);
+    }
+
+    private static ByteBuffer allocate(Tensor tensor) {
+        return ByteBuffer.allocateDirect(tensor.numBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    private Interpreter createInterpreter() throws IOException {
+        MappedByteBuffer mappedByteBuffer = new AssetModelMapper(context.getAssets()).map(modelPath);
+        // Unlike MNN there is no staged copy to fall back to, a heap copy would hide the page faults
+        if (mappedByteBuffer == null) {
+            throw new IOException(modelPath + " is compressed in the APK, add its extension to noCompress");
+        }
+        // Only the page reads are timed, opening and mapping the asset happen with or without prefetch
+        prefetchNanos = 0;
+        if (prefetchModel) {
+            long start = System.nanoTime();
+            mappedByteBuffer.load();
+            prefetchNanos = System.nanoTime() - start;
+        }
+
+        // Setup interpreter
+        return new Interpreter(mappedByteBuffer, options.toInterpreterOptions());
+    }
+
+    @Override
+    public void prepareInput(String inputPath) throws Exception {
+        inputs[0] = inputCache.get(inputPath, inputFormat);
+        // Outputs are written from the current position
+        for (ByteBuffer outputBuffer : outputBuffers) {
+            outputBuffer.rewind();
+        }
+    }
+
+    @Override
+    public void run() {
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+
+    // Raw output of the last run in the output's own type, valid until the next run.
+    public ByteBuffer getOutput(int index) {
+        ByteBuffer output = outputBuffers[index].duplicate().order(ByteOrder.nativeOrder());
+        output.rewind();
+        return output;
+    }
+
+    // Output of the last run as floats, quantized outputs are dequantized with their scale and zero point.
+    public float[] readOutput(int index) {
+        Tensor tensor = interpreter.getOutputTensor(index);
+        ByteBuffer output = getOutput(index);
+        float[] values = new float[tensor.numElements()];
+        if (tensor.dataType() == DataType.FLOAT32) {
+            output.asFloatBuffer().get(values);
+        } else if (tensor.dataType() == DataType.UINT8) {
+            Tensor.QuantizationParams params = tensor.quantizationParams();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ((output.get(i) & 0xff) - params.getZeroPoint()) * params.getScale();
+            }
+        } else {
+            throw new IllegalStateException("Unsupported output type " + tensor.dataType());
+        }
+        return values;
+    }
+
+    @Override
+    public void release() {
+        // The interpreter stays open in the registry
+        interpreter = null;
+        inputs = null;
+        outputBuffers = null;
+        outputs.clear();
+    }
+
+    @Override
+    public void reportMetrics(BenchmarkResult result) {
+        result.putMetric("interpreter_reused", reused ? 1 : 0);
+        if (loadFaults == null) {
+            return;
+        }
+        if (prefetchModel) {
+            result.putMetric("prefetch_ms", Statistics.toMillis(prefetchNanos));
+        }
+        result.putMetric("load_major_faults", loadFaults.major);
+        result.putMetric("load_minor_faults", loadFaults.minor);
+        // Warmup and timed runs, inputs included. Without prefetch the first runs fault on weight pages
+        PageFaults runFaults = PageFaults.read();
+        if (runFaults != null) {
+            runFaults = runFaults.since(loadedFaults);
+            result.putMetric("run_major_faults", runFaults.major);
+            result.putMetric("run_minor_faults", runFaults.minor);
+        }
+    }
+}
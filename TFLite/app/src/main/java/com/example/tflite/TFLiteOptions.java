@@ -0,0 +1,84 @@
+package com.example.tflite;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// CPU settings of the TFLite backend, applied through Interpreter.Options. NNAPI is always off.
+public class TFLiteOptions {
+    // default
+    public int threads = 4;
+    public boolean xnnpack = false;
+    public boolean fp16 = false; // Allow fp16 math for fp32 models.
+    public boolean bufferHandleOutput = false;
+
+    public Interpreter.Options toInterpreterOptions() {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(threads);
+        options.setUseXNNPACK(xnnpack);
+        options.setUseNNAPI(false);
+        options.setAllowFp16PrecisionForFp32(fp16);
+        options.setAllowBufferHandleOutput(bufferHandleOutput);
+        return options;
+    }
+
+    // Thread counts 1 to the number of cores.
+    public static int[] threadRange() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threads = new int[cores];
+        for (int i = 0; i < cores; i++) {
+            threads[i] = i + 1;
+        }
+        return threads;
+    }
+
+    // Cartesian product of the given values.
+    public static List<TFLiteOptions> grid(int[] threads, boolean[] xnnpacks, boolean[] fp16s,
+                                           boolean[] bufferHandleOutputs) {
+        List<TFLiteOptions> grid = new ArrayList<>();
+        for (int thread : threads) {
+            for (boolean xnnpack : xnnpacks) {
+                for (boolean fp16 : fp16s) {
+                    for (boolean bufferHandleOutput : bufferHandleOutputs) {
+                        TFLiteOptions options = new TFLiteOptions();
+                        options.threads = thread;
+                        options.xnnpack = xnnpack;
+                        options.fp16 = fp16;
+                        options.bufferHandleOutput = bufferHandleOutput;
+                        grid.add(options);
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TFLiteOptions that = (TFLiteOptions) o;
+        return threads == that.threads
+                && xnnpack == that.xnnpack
+                && fp16 == that.fp16
+                && bufferHandleOutput == that.bufferHandleOutput;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = threads;
+        result = 31 * result + (xnnpack ? 1 : 0);
+        result = 31 * result + (fp16 ? 1 : 0);
+        result = 31 * result + (bufferHandleOutput ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "threads=" + threads
+                + " xnnpack=" + xnnpack
+                + " fp16=" + fp16
+                + " bufferHandle=" + bufferHandleOutput;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.benchmark;
+
+/**
+ * An {@link InferenceBackend} that runs several inputs per call, e.g. for offline gallery processing
+ * where throughput matters more than latency. {@link Benchmark} fills every batch with consecutive
+ * inputs and reports the per-image throughput next to the per-call latency.
+ */
+public interface BatchedBackend extends InferenceBackend {
+
+    // Inputs per run, fixed from load() to release().
+    int getBatchSize();
+
+    // Make the given inputs, one per batch slot, current for the next run. Not timed.
+    void prepareBatch(String[] inputPaths) throws Exception;
+}
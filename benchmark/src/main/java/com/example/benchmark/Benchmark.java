@@ -0,0 +1,142 @@
+package com.example.benchmark;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Benchmark driver shared by all runtimes, so that numbers of different apps
+ * are measured the same way. Interrupting the running thread cancels the benchmark
+ * with a {@link CancellationException} at the next run boundary.
+ */
+public class Benchmark {
+
+    private final BenchmarkConfig config;
+
+    public Benchmark(BenchmarkConfig config) {
+        this.config = config;
+    }
+
+    public BenchmarkResult run(InferenceBackend backend) throws Exception {
+        // Load is timed on its own, so it never leaks into the first samples
+        long loadStart = System.nanoTime();
+        try {
+            backend.load();
+            long loadStop = System.nanoTime();
+            progress(ProgressListener.Phase.LOAD, 1, 1);
+
+            WarmupDetector warmup = warmup(backend);
+            if (backend instanceof MeasureListener) {
+                ((MeasureListener) backend).onMeasureStart();
+            }
+
+            MemoryTracker memory = new MemoryTracker(config.memoryProbe);
+            LatencyHistogram histogram = new LatencyHistogram();
+            int total = config.repeat * config.inputs.length;
+            for (int i = 0; i < config.repeat; i++) {
+                for (int j = 0; j < config.inputs.length; j++) {
+                    checkCancelled();
+                    prepare(backend, j);
+
+                    long start = System.nanoTime();
+                    backend.run();
+                    long stop = System.nanoTime();
+
+                    histogram.record(stop - start);
+                    progress(ProgressListener.Phase.MEASURE, (int) histogram.getCount(), total);
+                }
+                memory.sample();
+            }
+            BenchmarkResult result = new BenchmarkResult(backend.getName(), warmup.getIterations(),
+                    warmup.isSteady(), Statistics.of(histogram));
+            result.putMetric("load_ms", Statistics.toMillis(loadStop - loadStart));
+            if (backend instanceof BatchedBackend) {
+                int batch = ((BatchedBackend) backend).getBatchSize();
+                result.putMetric("batch", batch);
+                result.putMetric("images_per_s", batch * result.getFps());
+            }
+            if (warmup.getFirstNanos() >= 0) {
+                result.putMetric("first_inference_ms", Statistics.toMillis(warmup.getFirstNanos()));
+            }
+            memory.report(result);
+            if (backend instanceof MetricSource) {
+                ((MetricSource) backend).reportMetrics(result);
+            }
+            return result;
+        } finally {
+            backend.release();
+        }
+    }
+
+    // Cycle through the inputs until timings are steady or the warmup cap is reached.
+    private WarmupDetector warmup(InferenceBackend backend) throws Exception {
+        WarmupDetector detector = WarmupDetector.of(config);
+        int n = 0;
+        while (config.inputs.length > 0 && !detector.isDone()) {
+            checkCancelled();
+            prepare(backend, n++);
+
+            long start = System.nanoTime();
+            backend.run();
+            long stop = System.nanoTime();
+
+            detector.add(stop - start);
+            progress(ProgressListener.Phase.WARMUP, n, config.maxWarmup);
+        }
+        return detector;
+    }
+
+    // A batch starts at the index-th input and continues with the following ones, wrapping around.
+    private void prepare(InferenceBackend backend, int index) throws Exception {
+        int length = config.inputs.length;
+        if (!(backend instanceof BatchedBackend)) {
+            backend.prepareInput(config.inputs[index % length]);
+            return;
+        }
+        String[] batch = new String[((BatchedBackend) backend).getBatchSize()];
+        for (int k = 0; k < batch.length; k++) {
+            batch[k] = config.inputs[(index + k) % length];
+        }
+        ((BatchedBackend) backend).prepareBatch(batch);
+    }
+
+    private void progress(ProgressListener.Phase phase, int done, int total) {
+        if (config.progressListener != null) {
+            config.progressListener.onProgress(phase, done, total);
+        }
+    }
+
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Benchmark interrupted");
+        }
+    }
+
+    // Native memory after warmup, its peak and its growth over the measured repetitions.
+    private static class MemoryTracker {
+        private final MemoryProbe probe;
+        private final long start;
+        private long peak;
+        private long last;
+
+        MemoryTracker(MemoryProbe probe) {
+            this.probe = probe;
+            start = probe == null ? 0 : probe.nativeBytes();
+            peak = start;
+            last = start;
+        }
+
+        void sample() {
+            if (probe != null) {
+                last = probe.nativeBytes();
+                peak = Math.max(peak, last);
+            }
+        }
+
+        void report(BenchmarkResult result) {
+            if (probe != null) {
+                result.putMetric("native_kb", start / 1024.0);
+                result.putMetric("native_peak_kb", peak / 1024.0);
+                result.putMetric("native_growth_kb", (last - start) / 1024.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.benchmark;
+
+public class BenchmarkConfig {
+    // default
+    public String[] inputs = new String[0]; // Asset paths of the inputs.
+    public int repeat = 8; // Repeat inputs n times.
+    public int warmup = 4; // Run at least n warmup iterations.
+    public int maxWarmup = 64; // Stop warmup after n iterations even if timings did not settle.
+    public int warmupWindow = 8; // Rolling window of the steady state detection.
+    public double warmupMaxCv = 0.05; // Coefficient of variation accepted as steady.
+    public MemoryProbe memoryProbe = null; // Sampled outside the timed region if set.
+    public ProgressListener progressListener = null; // Notified outside the timed region if set.
+
+    // Prefix every asset name with its folder, e.g. ("inputs", {"1.jpg"}) -> {"inputs/1.jpg"}.
+    public static String[] assetPaths(String folder, String[] names) {
+        String[] paths = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            paths[i] = folder + "/" + names[i];
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.benchmark;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs benchmark jobs one at a time on a single dedicated worker thread, away from the UI thread.
+ * Callbacks are delivered through the given callback executor, e.g. Activity::runOnUiThread.
+ * A job is cancelled by interrupting the worker, which {@link Benchmark} checks between runs.
+ */
+public class BenchmarkExecutor {
+
+    public interface Job<R> {
+        R run() throws Exception;
+    }
+
+    // Exactly one method is called per submitted job.
+    public interface Callback<R> {
+        void onSuccess(R result);
+
+        void onFailure(Exception exception);
+
+        void onCancelled();
+    }
+
+    // Runs on the worker thread before the first job, e.g. to raise its priority or pin it to cores.
+    public interface WorkerSetup {
+        void onWorkerStart();
+    }
+
+    public static class Handle {
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+
+        private int state = PENDING;
+        private boolean cancelled;
+        private Thread worker;
+        private Runnable onCancelledBeforeStart;
+
+        // Cancel a pending job or interrupt a running one. Returns false if the job already finished.
+        public boolean cancel() {
+            Runnable notify;
+            synchronized (this) {
+                if (state == DONE || cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                if (state == RUNNING) {
+                    worker.interrupt();
+                    return true;
+                }
+                state = DONE;
+                notify = onCancelledBeforeStart;
+            }
+            notify.run();
+            return true;
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public synchronized boolean isDone() {
+            return state == DONE;
+        }
+
+        synchronized boolean start(Thread thread) {
+            if (state != PENDING) {
+                return false;
+            }
+            state = RUNNING;
+            worker = thread;
+            return true;
+        }
+
+        synchronized boolean finish() {
+            state = DONE;
+            worker = null;
+            // Never leak an interrupt meant for this job into the next one
+            Thread.interrupted();
+            return cancelled;
+        }
+    }
+
+    // At most one progress update per interval within a phase
+    static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+    // Posts when the phase changes or the interval has passed, never while the last post has not run yet.
+    // The posted runnable delivers the latest progress, so a dropped update is only skipped, never stale.
+    static class CoalescingListener implements ProgressListener, Runnable {
+        private final ProgressListener listener;
+        private final Executor executor;
+        private final long intervalNanos;
+
+        private Phase phase;
+        private int done;
+        private int total;
+        private boolean pending;
+        private Phase postedPhase;
+        private long postedNanos;
+
+        CoalescingListener(ProgressListener listener, Executor executor, long intervalNanos) {
+            this.listener = listener;
+            this.executor = executor;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public void onProgress(Phase phase, int done, int total) {
+            long now = System.nanoTime();
+            synchronized (this) {
+                this.phase = phase;
+                this.done = done;
+                this.total = total;
+                if (pending || (phase == postedPhase && now - postedNanos < intervalNanos)) {
+                    return;
+                }
+                pending = true;
+                postedPhase = phase;
+                postedNanos = now;
+            }
+            executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            Phase phase;
+            int done;
+            int total;
+            synchronized (this) {
+                pending = false;
+                phase = this.phase;
+                done = this.done;
+                total = this.total;
+            }
+            listener.onProgress(phase, done, total);
+        }
+    }
+
+    private final ExecutorService worker;
+    private final Executor callbackExecutor;
+
+    public BenchmarkExecutor(final WorkerSetup setup, Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (setup != null) {
+                            setup.onWorkerStart();
+                        }
+                        runnable.run();
+                    }
+                }, "benchmark");
+                thread.setPriority(Thread.MAX_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public <R> Handle submit(final Job<R> job, final Callback<R> callback) {
+        final Handle handle = new Handle();
+        handle.onCancelledBeforeStart = new Runnable() {
+            @Override
+            public void run() {
+                deliverCancelled(callback);
+            }
+        };
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!handle.start(Thread.currentThread())) {
+                    return;
+                }
+                R result = null;
+                Exception failure = null;
+                try {
+                    result = job.run();
+                } catch (Exception exception) {
+                    failure = exception;
+                }
+                boolean cancelled = handle.finish();
+                if (cancelled && (failure == null || isCancellation(failure))) {
+                    deliverCancelled(callback);
+                } else if (failure != null) {
+                    deliverFailure(callback, failure);
+                } else {
+                    deliverSuccess(callback, result);
+                }
+            }
+        });
+        return handle;
+    }
+
+    // Run a plain task on the worker after the already submitted jobs, e.g. to free models the jobs use.
+    public void execute(Runnable task) {
+        worker.execute(task);
+    }
+
+    // Forward progress through the callback executor, coalesced so UI updates don't disturb the timed runs.
+    public ProgressListener post(ProgressListener listener) {
+        return new CoalescingListener(listener, callbackExecutor, PROGRESS_INTERVAL_NANOS);
+    }
+
+    // Pending jobs and tasks still run, new ones are rejected. Cancel a running job through its handle.
+    public void shutdown() {
+        worker.shutdown();
+    }
+
+    private static boolean isCancellation(Exception exception) {
+        return exception instanceof CancellationException || exception instanceof InterruptedException;
+    }
+
+    private <R> void deliverSuccess(final Callback<R> callback, final R result) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSuccess(result);
+            }
+        });
+    }
+
+    private <R> void deliverFailure(final Callback<R> callback, final Exception exception) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onFailure(exception);
+            }
+        });
+    }
+
+    private <R> void deliverCancelled(final Callback<R> callback) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCancelled();
+            }
+        });
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.benchmark;
+
+import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BenchmarkResult {
+
+    private final String backendName;
+    private final int warmup;
+    private final boolean warmupSteady;
+    private final Statistics statistics;
+    // Additional named values in insertion order, e.g. load time or memory usage.
+    private final Map<String, Double> metrics = new LinkedHashMap<>();
+
+    public BenchmarkResult(String backendName, int warmup, boolean warmupSteady, Statistics statistics) {
+        this.backendName = backendName;
+        this.warmup = warmup;
+        this.warmupSteady = warmupSteady;
+        this.statistics = statistics;
+    }
+
+    public String getBackendName() {
+        return backendName;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    // False if warmup was stopped by the iteration cap before timings settled.
+    public boolean isWarmupSteady() {
+        return warmupSteady;
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    public double getFps() {
+        return statistics.getMeanFps();
+    }
+
+    public void putMetric(String name, double value) {
+        metrics.put(name, value);
+    }
+
+    // Returns NaN for unknown metrics.
+    public double getMetric(String name) {
+        Double value = metrics.get(name);
+        return value == null ? Double.NaN : value;
+    }
+
+    public Map<String, Double> getMetrics() {
+        return metrics;
+    }
+
+    public String format() {
+        DecimalFormat df = new DecimalFormat("#.###");
+        StringBuilder extra = new StringBuilder();
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            extra.append(' ').append(metric.getKey()).append('=').append(df.format(metric.getValue()));
+        }
+        return backendName
+                + ": fps=" + df.format(statistics.getMeanFps())
+                + " mean=" + ms(df, statistics.getMean())
+                + " +-" + ms(df, statistics.getConfidence95())
+                + " sd=" + ms(df, statistics.getStdDev())
+                + " p50=" + ms(df, statistics.getP50())
+                + " p90=" + ms(df, statistics.getP90())
+                + " p99=" + ms(df, statistics.getP99())
+                + " p99.9=" + ms(df, statistics.getP999())
+                + " max=" + ms(df, statistics.getMax())
+                + " samples=" + statistics.getCount()
+                + " warmup=" + warmup + (warmupSteady ? "" : " (not steady)")
+                + extra;
+    }
+
+    private static String ms(DecimalFormat df, double nanos) {
+        return df.format(Statistics.toMillis(nanos)) + "ms";
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
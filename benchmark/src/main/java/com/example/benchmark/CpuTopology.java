@@ -0,0 +1,61 @@
+package com.example.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the fastest cores from the cpufreq entries under /sys/devices/system/cpu.
+ * On big.LITTLE devices these are the big (or prime) cores.
+ */
+public final class CpuTopology {
+
+    public static final File SYS_CPU = new File("/sys/devices/system/cpu");
+
+    private CpuTopology() {
+    }
+
+    // Cores with the highest max frequency, or an empty array if cpufreq can not be read.
+    public static int[] bigCores(File sysCpu) {
+        List<Integer> cores = new ArrayList<>();
+        long best = 0;
+        for (int cpu = 0; ; cpu++) {
+            File dir = new File(sysCpu, "cpu" + cpu);
+            if (!dir.isDirectory()) {
+                break;
+            }
+            long freq = readLong(new File(dir, "cpufreq/cpuinfo_max_freq"));
+            if (freq <= 0) {
+                continue;
+            }
+            if (freq > best) {
+                best = freq;
+                cores.clear();
+            }
+            if (freq == best) {
+                cores.add(cpu);
+            }
+        }
+        int[] result = new int[cores.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cores.get(i);
+        }
+        return result;
+    }
+
+    public static int[] bigCores() {
+        return bigCores(SYS_CPU);
+    }
+
+    private static long readLong(File file) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            return line == null ? -1 : Long.parseLong(line.trim());
+        } catch (IOException | NumberFormatException exception) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.benchmark;
+
+/**
+ * Runtime specific part of a benchmark.
+ * Every app wraps its runtime into an implementation, while {@link Benchmark}
+ * owns the loop, the timing and the statistics.
+ */
+public interface InferenceBackend {
+
+    // Short runtime name shown in reports, e.g. "ORT" or "TFLite".
+    String getName();
+
+    // Load the model and create a session. Called once before the first input.
+    void load() throws Exception;
+
+    // Make the given input current for the next run. Not timed.
+    void prepareInput(String inputPath) throws Exception;
+
+    // Run inference on the current input. Timed.
+    void run() throws Exception;
+
+    // Free everything created by load().
+    void release();
+}
@@ -0,0 +1,110 @@
+package com.example.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Log-bucketed latency histogram in the spirit of HdrHistogram.
+ * Every power of two is split into {@link #SUB_BUCKETS} linear sub-buckets, so a recorded
+ * value is known with a relative error below 1 / SUB_BUCKETS over the whole long range.
+ * All memory is allocated in the constructor, {@link #record(long)} allocates nothing.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long min;
+    private long max;
+    // Welford's online mean and sum of squared differences.
+    private double mean;
+    private double m2;
+
+    public LatencyHistogram() {
+        reset();
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        mean = 0;
+        m2 = 0;
+    }
+
+    // Record one latency in nanoseconds. Negative values are recorded as 0.
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucketIndex(value)]++;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    // Sample standard deviation, 0 for less than two samples.
+    public double getStdDev() {
+        if (count < 2) {
+            return 0;
+        }
+        return Math.sqrt(m2 / (count - 1));
+    }
+
+    /**
+     * Smallest recorded value such that at least {@code percentile} percent of the samples
+     * are less or equal to it, rounded up to its bucket bound and capped by the maximum.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        double clamped = Math.min(100, Math.max(0, percentile));
+        long rank = Math.max(1, (long) Math.ceil(clamped / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(getMin(), Math.min(max, highestEquivalentValue(i)));
+            }
+        }
+        return max;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKETS) + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
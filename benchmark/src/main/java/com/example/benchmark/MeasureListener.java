@@ -0,0 +1,8 @@
+package com.example.benchmark;
+
+// Optionally implemented by an InferenceBackend that times parts of run() itself, so its own
+// numbers cover the same runs as the benchmark statistics.
+public interface MeasureListener {
+    // Called after load and warmup, right before the first measured prepare and run.
+    void onMeasureStart();
+}
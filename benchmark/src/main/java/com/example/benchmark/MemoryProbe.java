@@ -0,0 +1,6 @@
+package com.example.benchmark;
+
+// Reads the current native memory usage, e.g. Debug.getNativeHeapAllocatedSize on Android.
+public interface MemoryProbe {
+    long nativeBytes();
+}
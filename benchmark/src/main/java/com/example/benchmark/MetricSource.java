@@ -0,0 +1,6 @@
+package com.example.benchmark;
+
+// Optionally implemented by an InferenceBackend to add its own metrics, e.g. cache hits.
+public interface MetricSource {
+    void reportMetrics(BenchmarkResult result);
+}
@@ -0,0 +1,81 @@
+package com.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps loaded models, e.g. an OrtSession or a TFLite Interpreter, alive between benchmark runs.
+ * Models are created lazily on first use and shared by every caller asking for an equal key,
+ * typically a list of the model path and its options. The owner closes them on memory pressure
+ * or when it is destroyed; backends only borrow them and must not close them themselves.
+ * A model that fails to close is forgotten anyway, the failure is rethrown to the owner.
+ */
+public class ModelRegistry {
+
+    public interface Factory<T extends AutoCloseable> {
+        T create() throws Exception;
+    }
+
+    private final Map<Object, AutoCloseable> models = new HashMap<>();
+    private int hits;
+    private int misses;
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends AutoCloseable> T get(Object key, Factory<T> factory) throws Exception {
+        AutoCloseable model = models.get(key);
+        if (model != null) {
+            hits++;
+            return (T) model;
+        }
+        misses++;
+        T created = factory.create();
+        models.put(key, created);
+        return created;
+    }
+
+    public synchronized boolean contains(Object key) {
+        return models.containsKey(key);
+    }
+
+    public synchronized void close(Object key) throws Exception {
+        AutoCloseable model = models.remove(key);
+        if (model != null) {
+            model.close();
+        }
+    }
+
+    // Closes every model even if some fail, then throws the first failure with the others suppressed.
+    public synchronized void closeAll() throws Exception {
+        List<AutoCloseable> closing = new ArrayList<>(models.values());
+        models.clear();
+        Exception failure = null;
+        for (AutoCloseable model : closing) {
+            try {
+                model.close();
+            } catch (Exception exception) {
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public synchronized int size() {
+        return models.size();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * Copies model files, e.g. from APK assets, into a private directory for runtimes that can only
+ * load from a path. Next to every staged file a manifest keeps its size and SHA-256, so a file that
+ * is already staged with the same content is not copied again.
+ */
+public class ModelStager {
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    public static class Staged {
+        private final File file;
+        private final boolean copied;
+        private final long bytes;
+
+        Staged(File file, boolean copied, long bytes) {
+            this.file = file;
+            this.copied = copied;
+            this.bytes = bytes;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        // False if the file was already staged with the same content.
+        public boolean isCopied() {
+            return copied;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String MANIFEST_SUFFIX = ".sha256";
+    private static final String PARTIAL_SUFFIX = ".tmp";
+
+    private final File dir;
+
+    public ModelStager(File dir) {
+        this.dir = dir;
+    }
+
+    public Staged stage(String name, Source source) throws IOException {
+        File file = new File(dir, name);
+        Manifest manifest = Manifest.read(new File(dir, name + MANIFEST_SUFFIX));
+        if (manifest != null && file.length() == manifest.size) {
+            // Hashing only reads the source, which is much cheaper than writing it again
+            Manifest current = hash(source);
+            if (current.equals(manifest)) {
+                return new Staged(file, false, manifest.size);
+            }
+        }
+        Manifest copied = copy(source, file);
+        copied.write(new File(dir, name + MANIFEST_SUFFIX));
+        return new Staged(file, true, copied.size);
+    }
+
+    private Manifest copy(Source source, File file) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create " + dir);
+        }
+        // The manifest goes first, so an interrupted copy is never taken as staged
+        new File(dir, file.getName() + MANIFEST_SUFFIX).delete();
+        File partial = new File(dir, file.getName() + PARTIAL_SUFFIX);
+        MessageDigest digest = ModelFiles.digest();
+        long size;
+        try (DigestInputStream inputStream = new DigestInputStream(source.open(), digest);
+             ReadableByteChannel in = Channels.newChannel(inputStream);
+             FileOutputStream outputStream = new FileOutputStream(partial);
+             FileChannel out = outputStream.getChannel()) {
+            size = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, size, BUFFER_SIZE)) > 0) {
+                size += transferred;
+            }
+            out.force(false);
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Can not move " + partial + " to " + file);
+        }
+        return new Manifest(size, ModelFiles.hex(digest.digest()));
+    }
+
+    private static Manifest hash(Source source) throws IOException {
+        MessageDigest digest = ModelFiles.digest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream inputStream = source.open()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new Manifest(size, ModelFiles.hex(digest.digest()));
+    }
+
+    // "<size> <sha256>" on one line.
+    private static class Manifest {
+        final long size;
+        final String sha256;
+
+        Manifest(long size, String sha256) {
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        static Manifest read(File file) {
+            if (!file.isFile()) {
+                return null;
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line = reader.readLine();
+                String[] parts = line == null ? new String[0] : line.trim().split(" ");
+                return parts.length == 2 ? new Manifest(Long.parseLong(parts[0]), parts[1]) : null;
+            } catch (IOException | NumberFormatException exception) {
+                return null;
+            }
+        }
+
+        void write(File file) throws IOException {
+            try (Writer writer = new FileWriter(file)) {
+                writer.write(size + " " + sha256 + "\n");
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Manifest that = (Manifest) o;
+            return size == that.size && sha256.equals(that.sha256);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (size ^ (size >>> 32)) + sha256.hashCode();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Page fault counters of this process from /proc/self/stat. Major faults had to read from storage,
+ * e.g. the first touch of a mapped model page that is not in the page cache yet.
+ */
+public final class PageFaults {
+
+    public static final File SELF_STAT = new File("/proc/self/stat");
+
+    public final long minor;
+    public final long major;
+
+    public PageFaults(long minor, long major) {
+        this.minor = minor;
+        this.major = major;
+    }
+
+    // Faults between before and this sample.
+    public PageFaults since(PageFaults before) {
+        return new PageFaults(minor - before.minor, major - before.major);
+    }
+
+    // Null if the file can not be read, e.g. there is no /proc.
+    public static PageFaults read(File stat) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(stat))) {
+            String line = reader.readLine();
+            return line == null ? null : parse(line);
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    public static PageFaults read() {
+        return read(SELF_STAT);
+    }
+
+    // Null if the line is not in the proc(5) stat format.
+    public static PageFaults parse(String stat) {
+        // The command name can contain spaces and parentheses, the fields start after the last ')'
+        int end = stat.lastIndexOf(')');
+        if (end < 0) {
+            return null;
+        }
+        String[] fields = stat.substring(end + 1).trim().split("\\s+");
+        // fields[0] is the state, field 3 of the full line: minflt is field 10 and majflt field 12
+        if (fields.length < 10) {
+            return null;
+        }
+        try {
+            return new PageFaults(Long.parseLong(fields[7]), Long.parseLong(fields[9]));
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "minor=" + minor + " major=" + major;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts whole images into a {@link TensorFormat} without per pixel calls and without allocations.
+ * Sources are packed ARGB ints, as returned by Bitmap.getPixels, or RGBA bytes, as written by
+ * Bitmap.copyPixelsToBuffer, both already sized to the format. Channels are taken in R, G, B, A order.
+ * The inner loops only work on primitive arrays and are converted in bulk into the destination buffer.
+ * Sources of another size can be resized bilinearly in the same pass, without an intermediate image.
+ */
+public class PixelConverter {
+
+    // Position of R, G, B, A inside a packed ARGB int.
+    private static final int[] ARGB_SHIFTS = {16, 8, 0, 24};
+
+    private final TensorFormat format;
+    private final float[] scale;
+    private final float[] offset;
+    private final boolean identity;
+
+    private final float[] floats;
+    private final byte[] bytes;
+    private byte[] rgba;
+
+    // Bilinear sampling tables of the last source size, see prepareScale().
+    private int scaledWidth;
+    private int scaledHeight;
+    private int[] xLeft;
+    private int[] xRight;
+    private float[] xWeight;
+    private int[] yTop;
+    private int[] yBottom;
+    private float[] yWeight;
+
+    public PixelConverter(TensorFormat format) {
+        if (format.channels < 1 || format.channels > 4) {
+            throw new IllegalArgumentException("Unsupported channel count " + format.channels);
+        }
+        this.format = format;
+        scale = new float[format.channels];
+        offset = new float[format.channels];
+        boolean identity = true;
+        for (int c = 0; c < format.channels; c++) {
+            scale[c] = 1f / format.std[c];
+            offset[c] = -format.mean[c] / format.std[c];
+            identity &= format.mean[c] == 0f && format.std[c] == 1f;
+        }
+        this.identity = identity;
+        if (format.dataType == TensorFormat.DataType.FLOAT32) {
+            floats = new float[format.elementCount()];
+            bytes = null;
+        } else {
+            floats = null;
+            bytes = new byte[format.elementCount()];
+        }
+    }
+
+    public TensorFormat getFormat() {
+        return format;
+    }
+
+    // Write ARGB pixels to dest at its position and advance it by format.byteSize() bytes.
+    public void convert(int[] argb, ByteBuffer dest) {
+        checkSource(argb.length);
+        if (format.dataType == TensorFormat.DataType.FLOAT32) {
+            convertArgb(argb, floats);
+            putFloats(dest);
+        } else {
+            convertArgb(argb, bytes);
+            dest.put(bytes);
+        }
+    }
+
+    // Write ARGB pixels to a FLOAT32 dest at its position and advance it by format.elementCount() floats.
+    public void convert(int[] argb, FloatBuffer dest) {
+        checkSource(argb.length);
+        checkFloat();
+        convertArgb(argb, floats);
+        dest.put(floats);
+    }
+
+    // Write RGBA bytes from the source position to dest at its position, advancing both.
+    public void convertRgba(ByteBuffer source, ByteBuffer dest) {
+        readRgba(source);
+        if (format.dataType == TensorFormat.DataType.FLOAT32) {
+            convertRgba(rgba, floats);
+            putFloats(dest);
+        } else {
+            convertRgba(rgba, bytes);
+            dest.put(bytes);
+        }
+    }
+
+    // Write RGBA bytes from the source position to a FLOAT32 dest at its position, advancing both.
+    public void convertRgba(ByteBuffer source, FloatBuffer dest) {
+        checkFloat();
+        readRgba(source);
+        convertRgba(rgba, floats);
+        dest.put(floats);
+    }
+
+    // Resize ARGB pixels of any size bilinearly while converting them, then write them to dest at its
+    // position and advance it by format.byteSize() bytes. Uses pixel centers, like TF's half pixel mode.
+    public void convertScaled(int[] argb, int srcWidth, int srcHeight, ByteBuffer dest) {
+        if (srcWidth < 1 || srcHeight < 1 || argb.length < srcWidth * srcHeight) {
+            throw new IllegalArgumentException("Need " + srcWidth + "x" + srcHeight + " pixels, got " + argb.length);
+        }
+        prepareScale(srcWidth, srcHeight);
+        scaleArgb(argb, srcWidth);
+        if (format.dataType == TensorFormat.DataType.FLOAT32) {
+            putFloats(dest);
+        } else {
+            dest.put(bytes);
+        }
+    }
+
+    private void prepareScale(int srcWidth, int srcHeight) {
+        if (srcWidth == scaledWidth && srcHeight == scaledHeight) {
+            return;
+        }
+        xLeft = new int[format.width];
+        xRight = new int[format.width];
+        xWeight = new float[format.width];
+        sampleTable(srcWidth, format.width, xLeft, xRight, xWeight);
+        yTop = new int[format.height];
+        yBottom = new int[format.height];
+        yWeight = new float[format.height];
+        sampleTable(srcHeight, format.height, yTop, yBottom, yWeight);
+        scaledWidth = srcWidth;
+        scaledHeight = srcHeight;
+    }
+
+    private static void sampleTable(int srcSize, int dstSize, int[] low, int[] high, float[] weight) {
+        float ratio = srcSize / (float) dstSize;
+        for (int i = 0; i < dstSize; i++) {
+            float position = Math.max(0f, (i + 0.5f) * ratio - 0.5f);
+            int index = Math.min((int) position, srcSize - 1);
+            low[i] = index;
+            high[i] = Math.min(index + 1, srcSize - 1);
+            weight[i] = position - index;
+        }
+    }
+
+    private void scaleArgb(int[] argb, int srcWidth) {
+        int width = format.width;
+        int plane = width * format.height;
+        int channels = format.channels;
+        boolean nchw = format.layout == TensorFormat.Layout.NCHW;
+        for (int y = 0; y < format.height; y++) {
+            int top = yTop[y] * srcWidth;
+            int bottom = yBottom[y] * srcWidth;
+            float wy = yWeight[y];
+            for (int x = 0; x < width; x++) {
+                int topLeft = argb[top + xLeft[x]];
+                int topRight = argb[top + xRight[x]];
+                int bottomLeft = argb[bottom + xLeft[x]];
+                int bottomRight = argb[bottom + xRight[x]];
+                float wx = xWeight[x];
+                int i = y * width + x;
+                for (int c = 0; c < channels; c++) {
+                    int shift = ARGB_SHIFTS[c];
+                    float upper = lerp((topLeft >>> shift) & 0xFF, (topRight >>> shift) & 0xFF, wx);
+                    float lower = lerp((bottomLeft >>> shift) & 0xFF, (bottomRight >>> shift) & 0xFF, wx);
+                    float value = lerp(upper, lower, wy) * scale[c] + offset[c];
+                    int index = nchw ? c * plane + i : i * channels + c;
+                    if (floats != null) {
+                        floats[index] = value;
+                    } else {
+                        bytes[index] = quantize(value);
+                    }
+                }
+            }
+        }
+    }
+
+    private static float lerp(float a, float b, float weight) {
+        return a + (b - a) * weight;
+    }
+
+    private void convertArgb(int[] argb, float[] out) {
+        int plane = format.width * format.height;
+        int channels = format.channels;
+        for (int c = 0; c < channels; c++) {
+            int shift = ARGB_SHIFTS[c];
+            float s = scale[c];
+            float o = offset[c];
+            if (format.layout == TensorFormat.Layout.NCHW) {
+                int base = c * plane;
+                for (int i = 0; i < plane; i++) {
+                    out[base + i] = ((argb[i] >>> shift) & 0xFF) * s + o;
+                }
+            } else {
+                for (int i = 0; i < plane; i++) {
+                    out[i * channels + c] = ((argb[i] >>> shift) & 0xFF) * s + o;
+                }
+            }
+        }
+    }
+
+    private void convertArgb(int[] argb, byte[] out) {
+        int plane = format.width * format.height;
+        int channels = format.channels;
+        for (int c = 0; c < channels; c++) {
+            int shift = ARGB_SHIFTS[c];
+            int base = format.layout == TensorFormat.Layout.NCHW ? c * plane : c;
+            int step = format.layout == TensorFormat.Layout.NCHW ? 1 : channels;
+            if (identity) {
+                for (int i = 0; i < plane; i++) {
+                    out[base + i * step] = (byte) (argb[i] >>> shift);
+                }
+            } else {
+                float s = scale[c];
+                float o = offset[c];
+                for (int i = 0; i < plane; i++) {
+                    out[base + i * step] = quantize(((argb[i] >>> shift) & 0xFF) * s + o);
+                }
+            }
+        }
+    }
+
+    private void convertRgba(byte[] rgba, float[] out) {
+        int plane = format.width * format.height;
+        int channels = format.channels;
+        for (int c = 0; c < channels; c++) {
+            float s = scale[c];
+            float o = offset[c];
+            if (format.layout == TensorFormat.Layout.NCHW) {
+                int base = c * plane;
+                for (int i = 0; i < plane; i++) {
+                    out[base + i] = (rgba[4 * i + c] & 0xFF) * s + o;
+                }
+            } else {
+                for (int i = 0; i < plane; i++) {
+                    out[i * channels + c] = (rgba[4 * i + c] & 0xFF) * s + o;
+                }
+            }
+        }
+    }
+
+    private void convertRgba(byte[] rgba, byte[] out) {
+        int plane = format.width * format.height;
+        int channels = format.channels;
+        for (int c = 0; c < channels; c++) {
+            int base = format.layout == TensorFormat.Layout.NCHW ? c * plane : c;
+            int step = format.layout == TensorFormat.Layout.NCHW ? 1 : channels;
+            if (identity) {
+                for (int i = 0; i < plane; i++) {
+                    out[base + i * step] = rgba[4 * i + c];
+                }
+            } else {
+                float s = scale[c];
+                float o = offset[c];
+                for (int i = 0; i < plane; i++) {
+                    out[base + i * step] = quantize((rgba[4 * i + c] & 0xFF) * s + o);
+                }
+            }
+        }
+    }
+
+    private static byte quantize(float value) {
+        int rounded = Math.round(value);
+        return (byte) Math.max(0, Math.min(255, rounded));
+    }
+
+    // One bulk copy through a float view, which keeps dest's byte order. Native order needs no swapping.
+    private void putFloats(ByteBuffer dest) {
+        int position = dest.position();
+        dest.duplicate().order(dest.order()).asFloatBuffer().put(floats);
+        dest.position(position + 4 * floats.length);
+    }
+
+    private void readRgba(ByteBuffer source) {
+        int size = format.width * format.height * 4;
+        if (source.remaining() < size) {
+            throw new IllegalArgumentException("Need " + size + " RGBA bytes, got " + source.remaining());
+        }
+        if (rgba == null) {
+            rgba = new byte[size];
+        }
+        source.get(rgba);
+    }
+
+    private void checkSource(int length) {
+        if (length < format.width * format.height) {
+            throw new IllegalArgumentException("Need " + format.width * format.height + " pixels, got " + length);
+        }
+    }
+
+    private void checkFloat() {
+        if (format.dataType != TensorFormat.DataType.FLOAT32) {
+            throw new IllegalStateException("Format " + format + " is not FLOAT32");
+        }
+    }
+}
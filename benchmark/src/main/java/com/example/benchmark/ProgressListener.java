@@ -0,0 +1,10 @@
+package com.example.benchmark;
+
+// Called by Benchmark on its own thread after every untimed step and run.
+public interface ProgressListener {
+
+    enum Phase {LOAD, WARMUP, MEASURE}
+
+    // For WARMUP total is the warmup cap, warmup usually ends earlier.
+    void onProgress(Phase phase, int done, int total);
+}
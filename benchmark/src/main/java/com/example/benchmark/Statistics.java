@@ -0,0 +1,98 @@
+package com.example.benchmark;
+
+/**
+ * Immutable snapshot of a {@link LatencyHistogram}. All latencies are in nanoseconds.
+ */
+public class Statistics {
+
+    private static final double EPSILON = 0.0000001;
+    // Two-sided 95% quantile of the normal distribution.
+    private static final double Z_95 = 1.959964;
+
+    private final long count;
+    private final double mean;
+    private final double stdDev;
+    private final long min;
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+
+    private Statistics(LatencyHistogram histogram) {
+        count = histogram.getCount();
+        mean = histogram.getMean();
+        stdDev = histogram.getStdDev();
+        min = histogram.getMin();
+        max = histogram.getMax();
+        p50 = histogram.getValueAtPercentile(50);
+        p90 = histogram.getValueAtPercentile(90);
+        p99 = histogram.getValueAtPercentile(99);
+        p999 = histogram.getValueAtPercentile(99.9);
+    }
+
+    public static Statistics of(LatencyHistogram histogram) {
+        return new Statistics(histogram);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStdDev() {
+        return stdDev;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    // Half width of the 95% confidence interval of the mean (normal approximation).
+    public double getConfidence95() {
+        if (count < 2) {
+            return 0;
+        }
+        return Z_95 * stdDev / Math.sqrt(count);
+    }
+
+    public double getMeanSeconds() {
+        return mean / 1e9;
+    }
+
+    // Returns -1 if there is no sample or the mean is too small to be measured.
+    public double getMeanFps() {
+        double meanSec = getMeanSeconds();
+        if (meanSec > EPSILON) {
+            return 1 / meanSec;
+        }
+        return -1;
+    }
+
+    public static double toMillis(double nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Benchmarks one backend per candidate configuration with the same {@link BenchmarkConfig}
+ * and picks the candidate with the lowest mean latency. A candidate that fails to load or run
+ * is kept in the results with its error instead of aborting the whole sweep.
+ */
+public class Sweep<T> {
+
+    public interface BackendFactory<T> {
+        InferenceBackend create(T candidate) throws Exception;
+    }
+
+    // Called after each candidate, e.g. to log progress.
+    public interface Listener<T> {
+        void onCandidate(int index, int count, Entry<T> entry);
+    }
+
+    public static class Entry<T> {
+        private final T candidate;
+        private final BenchmarkResult result;
+        private final Exception error;
+
+        Entry(T candidate, BenchmarkResult result, Exception error) {
+            this.candidate = candidate;
+            this.result = result;
+            this.error = error;
+        }
+
+        public T getCandidate() {
+            return candidate;
+        }
+
+        // Null if the candidate failed.
+        public BenchmarkResult getResult() {
+            return result;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isFailed() {
+            return result == null;
+        }
+
+        public String format() {
+            return candidate + " -> " + (isFailed() ? "failed: " + error.getMessage() : result.format());
+        }
+
+        @Override
+        public String toString() {
+            return format();
+        }
+    }
+
+    private final BenchmarkConfig config;
+    private Listener<T> listener;
+
+    public Sweep(BenchmarkConfig config) {
+        this.config = config;
+    }
+
+    public void setListener(Listener<T> listener) {
+        this.listener = listener;
+    }
+
+    // Candidates are run one after another in the given order.
+    // A cancelled benchmark cancels the whole sweep instead of being recorded as a failure.
+    public List<Entry<T>> run(List<T> candidates, BackendFactory<T> factory) {
+        Benchmark benchmark = new Benchmark(config);
+        List<Entry<T>> entries = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            T candidate = candidates.get(i);
+            Entry<T> entry;
+            try {
+                entry = new Entry<>(candidate, benchmark.run(factory.create(candidate)), null);
+            } catch (CancellationException cancellation) {
+                throw cancellation;
+            } catch (Exception exception) {
+                entry = new Entry<>(candidate, null, exception);
+            }
+            entries.add(entry);
+            if (listener != null) {
+                listener.onCandidate(i, candidates.size(), entry);
+            }
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    // Lowest mean latency, null if every candidate failed.
+    public static <T> Entry<T> fastest(List<Entry<T>> entries) {
+        Entry<T> best = null;
+        for (Entry<T> entry : entries) {
+            if (entry.isFailed()) {
+                continue;
+            }
+            if (best == null || entry.getResult().getStatistics().getMean()
+                    < best.getResult().getStatistics().getMean()) {
+                best = entry;
+            }
+        }
+        return best;
+    }
+
+    // Highest value of a metric, e.g. images_per_s of batch sizes. Null if no candidate reported it.
+    public static <T> Entry<T> highest(List<Entry<T>> entries, String metric) {
+        Entry<T> best = null;
+        for (Entry<T> entry : entries) {
+            if (entry.isFailed() || Double.isNaN(entry.getResult().getMetric(metric))) {
+                continue;
+            }
+            if (best == null || entry.getResult().getMetric(metric) > best.getResult().getMetric(metric)) {
+                best = entry;
+            }
+        }
+        return best;
+    }
+
+    // One line per candidate, fastest first, failures last.
+    public static <T> String format(List<Entry<T>> entries) {
+        StringBuilder builder = new StringBuilder();
+        for (Entry<T> entry : sorted(entries)) {
+            builder.append(entry.format()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    // Comparison table with a header row, in the order of format(). Latencies are in milliseconds,
+    // backend metrics get one column each and are empty where a candidate did not report them.
+    public static <T> String csv(List<Entry<T>> entries) {
+        Set<String> metrics = new LinkedHashSet<>();
+        for (Entry<T> entry : entries) {
+            if (!entry.isFailed()) {
+                metrics.addAll(entry.getResult().getMetrics().keySet());
+            }
+        }
+        StringBuilder builder = new StringBuilder("candidate,fps,mean_ms,sd_ms,p50_ms,p90_ms,p99_ms,samples");
+        for (String metric : metrics) {
+            builder.append(',').append(csvField(metric));
+        }
+        builder.append(",error\n");
+        for (Entry<T> entry : sorted(entries)) {
+            builder.append(csvField(String.valueOf(entry.getCandidate())));
+            if (entry.isFailed()) {
+                for (int i = 0; i < 7 + metrics.size(); i++) {
+                    builder.append(',');
+                }
+                builder.append(',').append(csvField(String.valueOf(entry.getError().getMessage()))).append('\n');
+                continue;
+            }
+            Statistics statistics = entry.getResult().getStatistics();
+            builder.append(',').append(statistics.getMeanFps())
+                    .append(',').append(Statistics.toMillis(statistics.getMean()))
+                    .append(',').append(Statistics.toMillis(statistics.getStdDev()))
+                    .append(',').append(Statistics.toMillis(statistics.getP50()))
+                    .append(',').append(Statistics.toMillis(statistics.getP90()))
+                    .append(',').append(Statistics.toMillis(statistics.getP99()))
+                    .append(',').append(statistics.getCount());
+            for (String metric : metrics) {
+                Double value = entry.getResult().getMetrics().get(metric);
+                builder.append(',').append(value == null ? "" : value.toString());
+            }
+            builder.append(",\n");
+        }
+        return builder.toString();
+    }
+
+    private static <T> List<Entry<T>> sorted(List<Entry<T>> entries) {
+        List<Entry<T>> remaining = new ArrayList<>(entries);
+        List<Entry<T>> sorted = new ArrayList<>(entries.size());
+        Entry<T> best;
+        while ((best = fastest(remaining)) != null) {
+            sorted.add(best);
+            remaining.remove(best);
+        }
+        sorted.addAll(remaining);
+        return sorted;
+    }
+
+    // Quoted if it contains a separator, a quote or a line break.
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
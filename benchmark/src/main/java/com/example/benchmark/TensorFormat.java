@@ -0,0 +1,114 @@
+package com.example.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Format of one preprocessed image input, batches are made of several of them.
+ * Normalization works on the raw 0..255 channel values: out = (value - mean) / std.
+ */
+public class TensorFormat {
+
+    public enum Layout {
+        NCHW,
+        NHWC
+    }
+
+    public enum DataType {
+        FLOAT32(4),
+        UINT8(1);
+
+        public final int bytes;
+
+        DataType(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public static final float[] NO_MEAN = {0f, 0f, 0f, 0f};
+    public static final float[] NO_STD = {1f, 1f, 1f, 1f};
+    public static final float[] TORCHVISION_MEAN = {0.485f * 255, 0.456f * 255, 0.406f * 255};
+    public static final float[] TORCHVISION_STD = {0.229f * 255, 0.224f * 255, 0.225f * 255};
+
+    public final Layout layout;
+    public final DataType dataType;
+    public final int width;
+    public final int height;
+    public final int channels;
+    public final float[] mean;
+    public final float[] std;
+
+    public TensorFormat(Layout layout, DataType dataType, int width, int height, int channels,
+                        float[] mean, float[] std) {
+        if (mean.length < channels || std.length < channels) {
+            throw new IllegalArgumentException("Need mean and std for each of " + channels + " channels");
+        }
+        this.layout = layout;
+        this.dataType = dataType;
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.mean = Arrays.copyOf(mean, channels);
+        this.std = Arrays.copyOf(std, channels);
+    }
+
+    // RGB input without normalization.
+    public TensorFormat(Layout layout, DataType dataType, int width, int height) {
+        this(layout, dataType, width, height, 3, NO_MEAN, NO_STD);
+    }
+
+    public int elementCount() {
+        return width * height * channels;
+    }
+
+    public int byteSize() {
+        return elementCount() * dataType.bytes;
+    }
+
+    // Shape with batch size 1, {1, C, H, W} or {1, H, W, C}.
+    public long[] shape() {
+        return shape(1);
+    }
+
+    // {N, C, H, W} or {N, H, W, C}, the images follow each other.
+    public long[] shape(int batch) {
+        if (layout == Layout.NCHW) {
+            return new long[]{batch, channels, height, width};
+        }
+        return new long[]{batch, height, width, channels};
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TensorFormat)) {
+            return false;
+        }
+        TensorFormat that = (TensorFormat) o;
+        return layout == that.layout
+                && dataType == that.dataType
+                && width == that.width
+                && height == that.height
+                && channels == that.channels
+                && Arrays.equals(mean, that.mean)
+                && Arrays.equals(std, that.std);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = layout.hashCode();
+        result = 31 * result + dataType.hashCode();
+        result = 31 * result + width;
+        result = 31 * result + height;
+        result = 31 * result + channels;
+        result = 31 * result + Arrays.hashCode(mean);
+        result = 31 * result + Arrays.hashCode(std);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return layout + " " + dataType + " " + width + "x" + height + "x" + channels;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Remembers the best configuration found by a {@link Sweep} per model in a small properties file,
+ * so later launches can start on it without sweeping again. Values are opaque strings, the
+ * backend decides how to format and parse its configuration. A broken or missing file reads as empty.
+ */
+public class TuningCache {
+
+    private final File file;
+    private Properties properties;
+
+    public TuningCache(File file) {
+        this.file = file;
+    }
+
+    // Null if the model was never tuned.
+    public synchronized String get(String model) {
+        return load().getProperty(model);
+    }
+
+    public synchronized void put(String model, String config) throws IOException {
+        load().setProperty(model, config);
+        save();
+    }
+
+    public synchronized void remove(String model) throws IOException {
+        if (load().remove(model) != null) {
+            save();
+        }
+    }
+
+    private Properties load() {
+        if (properties == null) {
+            properties = new Properties();
+            if (file.isFile()) {
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    properties.load(inputStream);
+                } catch (IOException | IllegalArgumentException exception) {
+                    properties.clear();
+                }
+            }
+        }
+        return properties;
+    }
+
+    // Written next to the file and renamed, so a crash never leaves half a file.
+    private void save() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create " + dir);
+        }
+        File partial = new File(dir, file.getName() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(partial)) {
+            properties.store(outputStream, null);
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Can not move " + partial + " to " + file);
+        }
+    }
+}
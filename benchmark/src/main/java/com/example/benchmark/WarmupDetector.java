@@ -0,0 +1,100 @@
+package com.example.benchmark;
+
+/**
+ * Decides when warmup is over by looking at a rolling window of the last timings.
+ * Timings are steady when the coefficient of variation of the window is small and the
+ * means of its older and newer halves agree, the latter catches a slow drift (a change
+ * point) that a low variation alone would accept.
+ */
+public class WarmupDetector {
+
+    private final long[] window;
+    private final double maxCv;
+    private final int minIterations;
+    private final int maxIterations;
+
+    private int iterations = 0;
+    private long first = -1;
+    private boolean steady = false;
+    private double cv = Double.NaN;
+
+    public WarmupDetector(int windowSize, double maxCv, int minIterations, int maxIterations) {
+        if (windowSize < 2) {
+            throw new IllegalArgumentException("Window size must be at least 2: " + windowSize);
+        }
+        this.window = new long[windowSize];
+        this.maxCv = maxCv;
+        this.minIterations = minIterations;
+        this.maxIterations = Math.max(minIterations, maxIterations);
+    }
+
+    public static WarmupDetector of(BenchmarkConfig config) {
+        return new WarmupDetector(config.warmupWindow, config.warmupMaxCv, config.warmup, config.maxWarmup);
+    }
+
+    // Add one warmup timing, returns true once warmup is over.
+    public boolean add(long nanos) {
+        if (iterations == 0) {
+            first = nanos;
+        }
+        window[iterations % window.length] = nanos;
+        iterations++;
+        if (iterations >= window.length) {
+            steady = checkSteady();
+        }
+        return isDone();
+    }
+
+    public boolean isDone() {
+        return iterations >= maxIterations || (steady && iterations >= minIterations);
+    }
+
+    // False if warmup stopped because of the iteration cap.
+    public boolean isSteady() {
+        return steady;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    // The very first timing, i.e. the cold run, -1 before any.
+    public long getFirstNanos() {
+        return first;
+    }
+
+    // Coefficient of variation of the last full window, NaN before the window is full.
+    public double getCv() {
+        return cv;
+    }
+
+    private boolean checkSteady() {
+        int size = window.length;
+        int half = size / 2;
+        double sum = 0;
+        double olderSum = 0;
+        // The oldest sample sits where the next one will be written.
+        for (int i = 0; i < size; i++) {
+            long value = window[(iterations + i) % size];
+            sum += value;
+            if (i < half) {
+                olderSum += value;
+            }
+        }
+        double mean = sum / size;
+        if (mean <= 0) {
+            cv = 0;
+            return true;
+        }
+        double squares = 0;
+        for (long value : window) {
+            squares += (value - mean) * (value - mean);
+        }
+        cv = Math.sqrt(squares / (size - 1)) / mean;
+
+        double olderMean = olderSum / half;
+        double newerMean = (sum - olderSum) / (size - half);
+        double drift = Math.abs(olderMean - newerMean) / mean;
+        return cv <= maxCv && drift <= maxCv;
+    }
+}
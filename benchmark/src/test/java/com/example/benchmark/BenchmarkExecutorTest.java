@@ -0,0 +1,276 @@
+package com.example.benchmark;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkExecutorTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // Records which callback was called, with the result or the exception message.
+    private static class RecordingCallback<R> implements BenchmarkExecutor.Callback<R> {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onSuccess(R result) {
+            events.add("success " + result);
+        }
+
+        @Override
+        public void onFailure(Exception exception) {
+            events.add("failure " + exception.getMessage());
+        }
+
+        @Override
+        public void onCancelled() {
+            events.add("cancelled");
+        }
+
+        String next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private BenchmarkExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void submit_runsJobsOnOneSetUpWorker() throws Exception {
+        final String[] workerName = new String[1];
+        executor = new BenchmarkExecutor(new BenchmarkExecutor.WorkerSetup() {
+            @Override
+            public void onWorkerStart() {
+                workerName[0] = Thread.currentThread().getName();
+            }
+        }, DIRECT);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        BenchmarkExecutor.Job<String> job = new BenchmarkExecutor.Job<String>() {
+            @Override
+            public String run() {
+                return Thread.currentThread().getName();
+            }
+        };
+
+        executor.submit(job, callback);
+        executor.submit(job, callback);
+
+        assertEquals("success benchmark", callback.next());
+        assertEquals("success benchmark", callback.next());
+        assertEquals("benchmark", workerName[0]);
+    }
+
+    @Test
+    public void submit_reportsFailure() throws Exception {
+        executor = new BenchmarkExecutor(null, DIRECT);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+
+        executor.submit(new BenchmarkExecutor.Job<String>() {
+            @Override
+            public String run() throws Exception {
+                throw new Exception("no model");
+            }
+        }, callback);
+
+        assertEquals("failure no model", callback.next());
+    }
+
+    @Test
+    public void cancel_interruptsRunningBenchmark() throws Exception {
+        executor = new BenchmarkExecutor(null, DIRECT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a"};
+        config.repeat = Integer.MAX_VALUE;
+        config.warmup = 0;
+        config.maxWarmup = 0;
+        config.progressListener = new ProgressListener() {
+            @Override
+            public void onProgress(Phase phase, int done, int total) {
+                started.countDown();
+            }
+        };
+        final InferenceBackend backend = new IdleBackend();
+        RecordingCallback<BenchmarkResult> callback = new RecordingCallback<>();
+
+        BenchmarkExecutor.Handle handle = executor.submit(new BenchmarkExecutor.Job<BenchmarkResult>() {
+            @Override
+            public BenchmarkResult run() throws Exception {
+                return new Benchmark(config).run(backend);
+            }
+        }, callback);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(handle.cancel());
+        assertEquals("cancelled", callback.next());
+        assertTrue(handle.isDone());
+        assertFalse(handle.cancel());
+
+        // The worker is usable again and not interrupted anymore
+        RecordingCallback<Boolean> next = new RecordingCallback<>();
+        executor.submit(new BenchmarkExecutor.Job<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Thread.currentThread().isInterrupted();
+            }
+        }, next);
+        assertEquals("success false", next.next());
+    }
+
+    @Test
+    public void cancel_pendingJobNeverRuns() throws Exception {
+        executor = new BenchmarkExecutor(null, DIRECT);
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingCallback<String> first = new RecordingCallback<>();
+        RecordingCallback<String> second = new RecordingCallback<>();
+        executor.submit(new BenchmarkExecutor.Job<String>() {
+            @Override
+            public String run() throws Exception {
+                release.await();
+                return "first";
+            }
+        }, first);
+        BenchmarkExecutor.Handle handle = executor.submit(new BenchmarkExecutor.Job<String>() {
+            @Override
+            public String run() {
+                return "second";
+            }
+        }, second);
+
+        assertTrue(handle.cancel());
+        assertEquals("cancelled", second.next());
+        release.countDown();
+
+        assertEquals("success first", first.next());
+        assertNull(second.events.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shutdown_stillRunsPendingTasks() throws Exception {
+        executor = new BenchmarkExecutor(null, DIRECT);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        executor.submit(new BenchmarkExecutor.Job<String>() {
+            @Override
+            public String run() {
+                return "done";
+            }
+        }, callback);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closed.countDown();
+            }
+        });
+
+        executor.shutdown();
+
+        assertEquals("success done", callback.next());
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class IdleBackend implements InferenceBackend {
+        @Override
+        public String getName() {
+            return "Busy";
+        }
+
+        @Override
+        public void load() {
+        }
+
+        @Override
+        public void prepareInput(String inputPath) {
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    // Collects progress posts, runs them when the test says so.
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> queue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> runnables = new ArrayList<>(queue);
+            queue.clear();
+            for (Runnable runnable : runnables) {
+                runnable.run();
+            }
+        }
+    }
+
+    private static ProgressListener recording(final List<String> events) {
+        return new ProgressListener() {
+            @Override
+            public void onProgress(Phase phase, int done, int total) {
+                events.add(phase + " " + done + "/" + total);
+            }
+        };
+    }
+
+    @Test
+    public void post_dropsUpdatesWhileOneIsPendingAndDeliversTheLatest() {
+        QueuedExecutor executor = new QueuedExecutor();
+        List<String> events = new ArrayList<>();
+        ProgressListener listener = new BenchmarkExecutor.CoalescingListener(recording(events), executor, 0);
+
+        listener.onProgress(ProgressListener.Phase.MEASURE, 1, 10);
+        listener.onProgress(ProgressListener.Phase.MEASURE, 2, 10);
+        listener.onProgress(ProgressListener.Phase.MEASURE, 3, 10);
+        assertEquals(1, executor.queue.size());
+        executor.runAll();
+
+        assertEquals(1, events.size());
+        assertEquals("MEASURE 3/10", events.get(0));
+    }
+
+    @Test
+    public void post_limitsUpdatesWithinAPhaseButNotPhaseChanges() {
+        QueuedExecutor executor = new QueuedExecutor();
+        List<String> events = new ArrayList<>();
+        ProgressListener listener = new BenchmarkExecutor.CoalescingListener(recording(events), executor,
+                TimeUnit.HOURS.toNanos(1));
+
+        listener.onProgress(ProgressListener.Phase.WARMUP, 1, 64);
+        executor.runAll();
+        listener.onProgress(ProgressListener.Phase.WARMUP, 2, 64);
+        executor.runAll();
+        listener.onProgress(ProgressListener.Phase.MEASURE, 1, 10);
+        executor.runAll();
+
+        assertEquals(2, events.size());
+        assertEquals("WARMUP 1/64", events.get(0));
+        assertEquals("MEASURE 1/10", events.get(1));
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkTest {
+
+    private static class FakeBackend implements InferenceBackend {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public String getName() {
+            return "Fake";
+        }
+
+        @Override
+        public void load() {
+            calls.add("load");
+        }
+
+        @Override
+        public void prepareInput(String inputPath) {
+            calls.add("prepare " + inputPath);
+        }
+
+        @Override
+        public void run() {
+            calls.add("run");
+        }
+
+        @Override
+        public void release() {
+            calls.add("release");
+        }
+    }
+
+    @Test
+    public void run_visitsEveryInputRepeatTimes() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a", "b"};
+        config.repeat = 3;
+        config.warmup = 2;
+        config.maxWarmup = 2;
+        FakeBackend backend = new FakeBackend();
+
+        BenchmarkResult result = new Benchmark(config).run(backend);
+
+        assertEquals("load", backend.calls.get(0));
+        assertEquals("release", backend.calls.get(backend.calls.size() - 1));
+        assertEquals(2 + 2 * 2 + 3 * 2 * 2, backend.calls.size());
+        assertEquals("prepare b", backend.calls.get(3));
+        assertEquals(2, result.getWarmup());
+        assertEquals(6, result.getStatistics().getCount());
+        assertEquals("Fake", result.getBackendName());
+    }
+
+    @Test
+    public void run_releasesBackendOnFailure() {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a"};
+        FakeBackend backend = new FakeBackend() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("boom");
+            }
+        };
+
+        try {
+            new Benchmark(config).run(backend);
+            fail();
+        } catch (Exception e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertEquals("release", backend.calls.get(backend.calls.size() - 1));
+    }
+
+    @Test
+    public void run_reportsNativeMemoryGrowth() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a"};
+        config.repeat = 3;
+        config.warmup = 0;
+        config.maxWarmup = 0;
+        final long[] bytes = {10240};
+        config.memoryProbe = new MemoryProbe() {
+            @Override
+            public long nativeBytes() {
+                bytes[0] += 1024;
+                return bytes[0];
+            }
+        };
+
+        BenchmarkResult result = new Benchmark(config).run(new FakeBackend());
+
+        assertEquals(11, result.getMetric("native_kb"), 0);
+        assertEquals(14, result.getMetric("native_peak_kb"), 0);
+        assertEquals(3, result.getMetric("native_growth_kb"), 0);
+        assertTrue(result.format().contains("native_growth_kb=3"));
+        assertTrue(Double.isNaN(result.getMetric("unknown")));
+    }
+
+    @Test
+    public void run_reportsLoadTimeAndBackendMetrics() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a"};
+        config.repeat = 1;
+        class CacheBackend extends FakeBackend implements MetricSource {
+            @Override
+            public void reportMetrics(BenchmarkResult result) {
+                result.putMetric("cache_hit", 1);
+            }
+        }
+
+        BenchmarkResult result = new Benchmark(config).run(new CacheBackend());
+
+        assertTrue(result.getMetric("load_ms") >= 0);
+        assertTrue(result.getMetric("first_inference_ms") >= 0);
+        assertEquals(1, result.getMetric("cache_hit"), 0);
+    }
+
+    @Test
+    public void run_fillsBatchesWithConsecutiveInputs() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a", "b", "c"};
+        config.repeat = 1;
+        config.warmup = 1;
+        config.maxWarmup = 1;
+        class PairBackend extends FakeBackend implements BatchedBackend {
+            @Override
+            public int getBatchSize() {
+                return 2;
+            }
+
+            @Override
+            public void prepareBatch(String[] inputPaths) {
+                calls.add("batch " + Arrays.toString(inputPaths));
+            }
+        }
+        PairBackend backend = new PairBackend();
+
+        BenchmarkResult result = new Benchmark(config).run(backend);
+
+        assertEquals(Arrays.asList("load", "batch [a, b]", "run", "batch [a, b]", "run", "batch [b, c]", "run",
+                "batch [c, a]", "run", "release"), backend.calls);
+        assertEquals(2, result.getMetric("batch"), 0);
+        assertEquals(2 * result.getFps(), result.getMetric("images_per_s"), 1e-9);
+    }
+
+    @Test
+    public void run_releasesBackendWhenLoadFails() {
+        FakeBackend backend = new FakeBackend() {
+            @Override
+            public void load() {
+                throw new IllegalStateException("no model");
+            }
+        };
+
+        try {
+            new Benchmark(new BenchmarkConfig()).run(backend);
+            fail();
+        } catch (Exception e) {
+            assertEquals("no model", e.getMessage());
+        }
+        assertEquals("release", backend.calls.get(backend.calls.size() - 1));
+    }
+
+    @Test
+    public void run_reportsProgressOfEveryPhase() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a", "b"};
+        config.repeat = 2;
+        config.warmup = 3;
+        config.maxWarmup = 3;
+        final List<String> events = new ArrayList<>();
+        config.progressListener = new ProgressListener() {
+            @Override
+            public void onProgress(Phase phase, int done, int total) {
+                events.add(phase + " " + done + "/" + total);
+            }
+        };
+
+        new Benchmark(config).run(new FakeBackend());
+
+        assertEquals(Arrays.asList("LOAD 1/1", "WARMUP 1/3", "WARMUP 2/3", "WARMUP 3/3",
+                "MEASURE 1/4", "MEASURE 2/4", "MEASURE 3/4", "MEASURE 4/4"), events);
+    }
+
+    @Test
+    public void statistics_meanFps() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10_000_000);
+        histogram.record(20_000_000);
+        histogram.record(30_000_000);
+        Statistics statistics = Statistics.of(histogram);
+        assertEquals(3, statistics.getCount());
+        assertEquals(20_000_000, statistics.getMean(), 1e-3);
+        assertEquals(50.0, statistics.getMeanFps(), 1e-9);
+        assertEquals(10_000_000, statistics.getMin());
+        assertEquals(30_000_000, statistics.getMax());
+    }
+
+    @Test
+    public void statistics_emptyHasNoFps() {
+        assertEquals(-1, Statistics.of(new LatencyHistogram()).getMeanFps(), 0);
+    }
+
+    @Test
+    public void run_tellsBackendWhenMeasuringStarts() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a"};
+        config.repeat = 2;
+        config.warmup = 1;
+        config.maxWarmup = 1;
+        class PhasedBackend extends FakeBackend implements MeasureListener {
+            @Override
+            public void onMeasureStart() {
+                calls.add("measure");
+            }
+        }
+        PhasedBackend backend = new PhasedBackend();
+
+        new Benchmark(config).run(backend);
+
+        assertEquals(Arrays.asList("load", "prepare a", "run", "measure", "prepare a", "run", "prepare a", "run",
+                "release"), backend.calls);
+    }
+}
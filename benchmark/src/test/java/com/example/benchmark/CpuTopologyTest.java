@@ -0,0 +1,43 @@
+package com.example.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class CpuTopologyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void cpu(int index, String maxFreq) throws IOException {
+        File cpufreq = new File(folder.getRoot(), "cpu" + index + "/cpufreq");
+        assertTrue(cpufreq.mkdirs());
+        if (maxFreq != null) {
+            try (FileWriter writer = new FileWriter(new File(cpufreq, "cpuinfo_max_freq"))) {
+                writer.write(maxFreq + "\n");
+            }
+        }
+    }
+
+    @Test
+    public void bigCores_picksHighestMaxFrequency() throws Exception {
+        cpu(0, "1800000");
+        cpu(1, "1800000");
+        cpu(2, "2400000");
+        cpu(3, "2400000");
+        cpu(4, null);
+
+        assertArrayEquals(new int[]{2, 3}, CpuTopology.bigCores(folder.getRoot()));
+    }
+
+    @Test
+    public void bigCores_emptyWithoutCpufreq() {
+        assertEquals(0, CpuTopology.bigCores(new File(folder.getRoot(), "missing")).length);
+    }
+}
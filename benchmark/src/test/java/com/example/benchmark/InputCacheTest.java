@@ -0,0 +1,80 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InputCacheTest {
+
+    private static final TensorFormat RGB_2X2 =
+            new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.UINT8, 2, 2);
+
+    private static class CountingLoader implements InputCache.Loader {
+        final List<String> loads = new ArrayList<>();
+
+        @Override
+        public void load(String inputPath, TensorFormat format, ByteBuffer dest) {
+            loads.add(inputPath + " " + format.dataType);
+            while (dest.hasRemaining()) {
+                dest.put((byte) inputPath.length());
+            }
+        }
+    }
+
+    @Test
+    public void get_loadsOncePerInputAndFormat() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        InputCache cache = new InputCache(loader, 1 << 20);
+        TensorFormat floats = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.FLOAT32, 2, 2);
+
+        ByteBuffer first = cache.get("a", RGB_2X2);
+        ByteBuffer second = cache.get("a", RGB_2X2);
+        ByteBuffer asFloat = cache.get("a", floats);
+
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertTrue(first.isDirect());
+        assertEquals(12, first.capacity());
+        assertEquals(48, asFloat.capacity());
+        assertEquals(2, loader.loads.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(60, cache.getBytes());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsedOverBudget() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        InputCache cache = new InputCache(loader, 24);
+
+        cache.get("a", RGB_2X2);
+        cache.get("b", RGB_2X2);
+        cache.get("a", RGB_2X2);
+        cache.get("c", RGB_2X2); // evicts b
+
+        assertEquals(2, cache.size());
+        assertEquals(24, cache.getBytes());
+        assertEquals(1, cache.getEvictions());
+
+        cache.get("a", RGB_2X2);
+        assertEquals(3, loader.loads.size());
+        cache.get("b", RGB_2X2);
+        assertEquals(4, loader.loads.size());
+    }
+
+    @Test
+    public void preload_fillsTheCache() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        InputCache cache = new InputCache(loader, 1 << 20);
+
+        cache.preload(new String[]{"a", "bb"}, RGB_2X2);
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.get("bb", RGB_2X2).get(0));
+        assertEquals(2, cache.getMisses());
+    }
+}
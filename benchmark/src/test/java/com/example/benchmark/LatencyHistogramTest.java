@@ -0,0 +1,73 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndex_isMonotonicAndPrecise() {
+        int previous = -1;
+        for (long value = 0; value < 1_000_000; value += 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            long upper = LatencyHistogram.highestEquivalentValue(index);
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / LatencyHistogram.SUB_BUCKETS);
+            previous = index;
+        }
+        assertEquals(Long.MAX_VALUE,
+                LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentiles_ofUniformSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 100);
+        assertEquals(900_000, histogram.getValueAtPercentile(90), 900_000 / 100);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 100);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(99.9), 1_000_000 / 100);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getValueAtPercentile(0), 1000 / 100);
+    }
+
+    @Test
+    public void meanAndStdDev_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+        for (long value : values) {
+            histogram.record(value);
+        }
+        assertEquals(5.0, histogram.getMean(), 1e-12);
+        assertEquals(Math.sqrt(32.0 / 7), histogram.getStdDev(), 1e-12);
+        assertEquals(2, histogram.getMin());
+        assertEquals(9, histogram.getMax());
+    }
+
+    @Test
+    public void subMillisecondSamples_areNotLost() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(350_000);
+        }
+        Statistics statistics = Statistics.of(histogram);
+        assertTrue(statistics.getMeanFps() > 2800);
+        assertEquals(0, statistics.getConfidence95(), 0);
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class ModelFilesTest {
+
+    // Returns at most 3 bytes per read and claims nothing is available, like a compressed asset.
+    private static class TrickleInputStream extends ByteArrayInputStream {
+        TrickleInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+
+        @Override
+        public synchronized int available() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void readFully_readsPastShortReads() throws Exception {
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        InputStream inputStream = new TrickleInputStream(data);
+
+        assertArrayEquals(data, ModelFiles.readFully(inputStream));
+    }
+
+    @Test
+    public void sha256_matchesKnownDigest() throws Exception {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", ModelFiles.sha256("abc"));
+        assertEquals(ModelFiles.sha256("abc"), ModelFiles.sha256(new byte[]{'a', 'b', 'c'}));
+        assertEquals(ModelFiles.sha256("abcdefg"), ModelFiles.sha256(new TrickleInputStream("abcdefg".getBytes("UTF-8"))));
+    }
+}
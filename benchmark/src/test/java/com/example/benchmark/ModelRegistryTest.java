@@ -0,0 +1,122 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ModelRegistryTest {
+
+    private static class FakeModel implements AutoCloseable {
+        boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class CountingFactory implements ModelRegistry.Factory<FakeModel> {
+        int created;
+
+        @Override
+        public FakeModel create() {
+            created++;
+            return new FakeModel();
+        }
+    }
+
+    @Test
+    public void get_createsOncePerKey() throws Exception {
+        ModelRegistry registry = new ModelRegistry();
+        CountingFactory factory = new CountingFactory();
+
+        FakeModel first = registry.get(Arrays.asList("model", 4), factory);
+        FakeModel second = registry.get(Arrays.asList("model", 4), factory);
+        FakeModel other = registry.get(Arrays.asList("model", 2), factory);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, factory.created);
+        assertEquals(1, registry.getHits());
+        assertEquals(2, registry.getMisses());
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void closeAll_closesAndForgetsModels() throws Exception {
+        ModelRegistry registry = new ModelRegistry();
+        CountingFactory factory = new CountingFactory();
+        FakeModel a = registry.get("a", factory);
+        FakeModel b = registry.get("b", factory);
+
+        registry.closeAll();
+
+        assertTrue(a.closed);
+        assertTrue(b.closed);
+        assertEquals(0, registry.size());
+        assertNotSame(a, registry.get("a", factory));
+    }
+
+    @Test
+    public void close_onlyClosesThatKey() throws Exception {
+        ModelRegistry registry = new ModelRegistry();
+        CountingFactory factory = new CountingFactory();
+        FakeModel a = registry.get("a", factory);
+        FakeModel b = registry.get("b", factory);
+
+        registry.close("a");
+
+        assertTrue(a.closed);
+        assertFalse(b.closed);
+        assertFalse(registry.contains("a"));
+        assertTrue(registry.contains("b"));
+    }
+
+    @Test
+    public void get_doesNotCacheFailedCreation() throws Exception {
+        ModelRegistry registry = new ModelRegistry();
+        try {
+            registry.get("a", new ModelRegistry.Factory<FakeModel>() {
+                @Override
+                public FakeModel create() throws Exception {
+                    throw new Exception("broken");
+                }
+            });
+            fail();
+        } catch (Exception e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertFalse(registry.contains("a"));
+    }
+
+    @Test
+    public void closeAll_closesEveryModelAndRethrowsFailures() throws Exception {
+        ModelRegistry registry = new ModelRegistry();
+        CountingFactory factory = new CountingFactory();
+        FakeModel ok = registry.get("ok", factory);
+        for (final String key : new String[]{"first", "second"}) {
+            registry.get(key, new ModelRegistry.Factory<AutoCloseable>() {
+                @Override
+                public AutoCloseable create() {
+                    return new AutoCloseable() {
+                        @Override
+                        public void close() throws Exception {
+                            throw new Exception(key);
+                        }
+                    };
+                }
+            });
+        }
+
+        try {
+            registry.closeAll();
+            fail();
+        } catch (Exception exception) {
+            assertEquals(1, exception.getSuppressed().length);
+        }
+        assertTrue(ok.closed);
+        assertEquals(0, registry.size());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class ModelStagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class BytesSource implements ModelStager.Source {
+        byte[] data;
+        int opened;
+
+        BytesSource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public InputStream open() {
+            opened++;
+            return new ByteArrayInputStream(data);
+        }
+    }
+
+    private static byte[] bytes(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] read(File file) throws Exception {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return ModelFiles.readFully(inputStream);
+        }
+    }
+
+    @Test
+    public void stage_copiesOnceAndSkipsSameContent() throws Exception {
+        File dir = new File(folder.getRoot(), "models");
+        ModelStager stager = new ModelStager(dir);
+        BytesSource source = new BytesSource(bytes(3_000_000, 1));
+
+        ModelStager.Staged first = stager.stage("model.ptl", source);
+        ModelStager.Staged second = stager.stage("model.ptl", source);
+
+        assertTrue(first.isCopied());
+        assertFalse(second.isCopied());
+        assertEquals(3_000_000, second.getBytes());
+        assertEquals(new File(dir, "model.ptl"), second.getFile());
+        assertArrayEquals(source.data, read(second.getFile()));
+        assertFalse(new File(dir, "model.ptl.tmp").exists());
+    }
+
+    @Test
+    public void stage_recopiesChangedSource() throws Exception {
+        ModelStager stager = new ModelStager(folder.getRoot());
+        BytesSource source = new BytesSource(bytes(1000, 1));
+        stager.stage("model.ptl", source);
+
+        source.data = bytes(1000, 2);
+        ModelStager.Staged staged = stager.stage("model.ptl", source);
+
+        assertTrue(staged.isCopied());
+        assertArrayEquals(source.data, read(staged.getFile()));
+    }
+
+    @Test
+    public void stage_recopiesTruncatedFile() throws Exception {
+        ModelStager stager = new ModelStager(folder.getRoot());
+        BytesSource source = new BytesSource(bytes(1000, 1));
+        File file = stager.stage("model.ptl", source).getFile();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("broken");
+        }
+
+        ModelStager.Staged staged = stager.stage("model.ptl", source);
+
+        assertTrue(staged.isCopied());
+        assertArrayEquals(source.data, read(file));
+        // The size check alone detects the damage, the source is not hashed first
+        assertEquals(2, source.opened);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.Assert.*;
+
+public class PageFaultsTest {
+
+    private static final String STAT = "1234 (app (main) x) S 1 1234 0 0 -1 4194560 5678 0 42 0 10 5 0 0 20 0 12";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parse_readsMinorAndMajorFaults() {
+        PageFaults faults = PageFaults.parse(STAT);
+
+        assertEquals(5678, faults.minor);
+        assertEquals(42, faults.major);
+    }
+
+    @Test
+    public void parse_nullForOtherFormats() {
+        assertNull(PageFaults.parse(""));
+        assertNull(PageFaults.parse("1234 (app) S 1 1234"));
+        assertNull(PageFaults.parse("1234 (app) S 1 1234 0 0 -1 4194560 many 0 42"));
+    }
+
+    @Test
+    public void since_subtractsEarlierSample() {
+        PageFaults faults = new PageFaults(150, 12).since(new PageFaults(100, 10));
+
+        assertEquals(50, faults.minor);
+        assertEquals(2, faults.major);
+    }
+
+    @Test
+    public void read_parsesFile() throws Exception {
+        File stat = folder.newFile("stat");
+        try (FileWriter writer = new FileWriter(stat)) {
+            writer.write(STAT + "\n");
+        }
+
+        assertEquals(42, PageFaults.read(stat).major);
+        assertNull(PageFaults.read(new File(folder.getRoot(), "missing")));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Compares the fused PixelConverter.convertScaled() with the two stage path of the support library:
+ * resize into an intermediate image, then convert it. Both paths reuse their converter and arrays,
+ * so only the extra pass over the intermediate image is measured.
+ * Run with gradle resizeBenchmark, timings depend on the machine so this is not part of the tests.
+ */
+public class PixelConverterBenchmark {
+
+    private static final int SOURCE_WIDTH = 640;
+    private static final int SOURCE_HEIGHT = 480;
+    private static final int ITERATIONS = 200;
+
+    public static void main(String[] args) {
+        int[] argb = new int[SOURCE_WIDTH * SOURCE_HEIGHT];
+        Random random = new Random(42);
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt();
+        }
+        TensorFormat[] formats = {
+                new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.UINT8, 224, 224),
+                new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.FLOAT32, 224, 224),
+                new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.FLOAT32, 224, 224, 3,
+                        TensorFormat.TORCHVISION_MEAN, TensorFormat.TORCHVISION_STD),
+        };
+        for (TensorFormat format : formats) {
+            ByteBuffer dest = ByteBuffer.allocateDirect(format.byteSize()).order(ByteOrder.nativeOrder());
+            PixelConverter converter = new PixelConverter(format);
+            int[] resized = new int[format.width * format.height];
+            // Twice, the first round only warms up the JIT
+            for (int round = 0; round < 2; round++) {
+                double twoStage = time(() -> {
+                    dest.clear();
+                    resize(argb, SOURCE_WIDTH, SOURCE_HEIGHT, resized, format.width, format.height);
+                    converter.convert(resized, dest);
+                });
+                double fused = time(() -> {
+                    dest.clear();
+                    converter.convertScaled(argb, SOURCE_WIDTH, SOURCE_HEIGHT, dest);
+                });
+                if (round == 1) {
+                    System.out.printf("%s %s %dx%d: two stage %.3f ms, fused %.3f ms, %.2fx%n",
+                            format.layout, format.dataType, format.width, format.height,
+                            twoStage, fused, twoStage / fused);
+                }
+            }
+        }
+    }
+
+    // Mean ms per iteration
+    private static double time(Runnable body) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            body.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+    }
+
+    // Bilinear resize into an ARGB image, the same sampling as convertScaled()
+    static void resize(int[] argb, int srcWidth, int srcHeight, int[] out, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            float sy = Math.max(0f, (y + 0.5f) * srcHeight / height - 0.5f);
+            int y0 = Math.min((int) sy, srcHeight - 1);
+            int y1 = Math.min(y0 + 1, srcHeight - 1);
+            float wy = sy - y0;
+            for (int x = 0; x < width; x++) {
+                float sx = Math.max(0f, (x + 0.5f) * srcWidth / width - 0.5f);
+                int x0 = Math.min((int) sx, srcWidth - 1);
+                int x1 = Math.min(x0 + 1, srcWidth - 1);
+                float wx = sx - x0;
+                int topLeft = argb[y0 * srcWidth + x0];
+                int topRight = argb[y0 * srcWidth + x1];
+                int bottomLeft = argb[y1 * srcWidth + x0];
+                int bottomRight = argb[y1 * srcWidth + x1];
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    float top = lerp(topLeft >>> shift & 0xFF, topRight >>> shift & 0xFF, wx);
+                    float bottom = lerp(bottomLeft >>> shift & 0xFF, bottomRight >>> shift & 0xFF, wx);
+                    pixel |= (int) (lerp(top, bottom, wy) + 0.5f) << shift;
+                }
+                out[y * width + x] = pixel;
+            }
+        }
+    }
+
+    private static float lerp(float a, float b, float weight) {
+        return a + (b - a) * weight;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class PixelConverterTest {
+
+    // 2x1 image: a red-ish and a blue-ish pixel.
+    private static final int[] ARGB = {0xFF102030, 0x80405060};
+    private static final byte[] RGBA = {0x10, 0x20, 0x30, (byte) 0xFF, 0x40, 0x50, 0x60, (byte) 0x80};
+
+    private static ByteBuffer direct(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    @Test
+    public void argbToNchwFloat() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.FLOAT32, 2, 1);
+        FloatBuffer dest = direct(format.byteSize()).asFloatBuffer();
+
+        new PixelConverter(format).convert(ARGB, dest);
+
+        assertEquals(6, dest.position());
+        float[] expected = {0x10, 0x40, 0x20, 0x50, 0x30, 0x60};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], dest.get(i), 0);
+        }
+    }
+
+    @Test
+    public void argbToNhwcFloatNormalized() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.FLOAT32, 2, 1,
+                3, new float[]{16, 32, 48}, new float[]{2, 4, 8});
+        ByteBuffer dest = direct(format.byteSize());
+
+        new PixelConverter(format).convert(ARGB, dest);
+
+        assertEquals(24, dest.position());
+        float[] expected = {0, 0, 0, 24, 12, 6};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], dest.getFloat(4 * i), 1e-6);
+        }
+    }
+
+    @Test
+    public void argbToNhwcUint8() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.UINT8, 2, 1);
+        ByteBuffer dest = direct(format.byteSize());
+
+        new PixelConverter(format).convert(ARGB, dest);
+
+        byte[] expected = {0x10, 0x20, 0x30, 0x40, 0x50, 0x60};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], dest.get(i));
+        }
+    }
+
+    @Test
+    public void uint8NormalizationIsClamped() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.UINT8, 2, 1,
+                3, new float[]{0x20, 0, 0}, new float[]{1, 0.25f, 1});
+        ByteBuffer dest = direct(format.byteSize());
+
+        new PixelConverter(format).convert(ARGB, dest);
+
+        assertEquals(0, dest.get(0));
+        assertEquals(0x20, dest.get(1));
+        assertEquals((byte) 128, dest.get(2));
+        assertEquals((byte) 255, dest.get(3));
+    }
+
+    @Test
+    public void rgbaMatchesArgb() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.FLOAT32, 2, 1,
+                4, TensorFormat.NO_MEAN, TensorFormat.NO_STD);
+        PixelConverter converter = new PixelConverter(format);
+        FloatBuffer fromArgb = direct(format.byteSize()).asFloatBuffer();
+        FloatBuffer fromRgba = direct(format.byteSize()).asFloatBuffer();
+        ByteBuffer source = ByteBuffer.wrap(RGBA);
+
+        converter.convert(ARGB, fromArgb);
+        converter.convertRgba(source, fromRgba);
+
+        assertEquals(8, source.position());
+        assertEquals(255, fromRgba.get(6), 0);
+        for (int i = 0; i < format.elementCount(); i++) {
+            assertEquals(fromArgb.get(i), fromRgba.get(i), 0);
+        }
+    }
+
+    @Test
+    public void writesBatchesBackToBack() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.UINT8, 2, 1);
+        PixelConverter converter = new PixelConverter(format);
+        ByteBuffer dest = direct(2 * format.byteSize());
+
+        converter.convert(ARGB, dest);
+        converter.convert(new int[]{0, 0xFFFFFF}, dest);
+
+        assertFalse(dest.hasRemaining());
+        assertEquals(0x10, dest.get(0));
+        assertEquals(0, dest.get(6));
+        assertEquals((byte) 0xFF, dest.get(11));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSmallSource() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.UINT8, 2, 2);
+        new PixelConverter(format).convert(ARGB, direct(format.byteSize()));
+    }
+
+    @Test
+    public void convertScaled_sameSizeMatchesConvert() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.FLOAT32, 2, 1,
+                3, new float[]{16, 32, 48}, new float[]{2, 4, 8});
+        ByteBuffer scaled = direct(format.byteSize());
+        ByteBuffer plain = direct(format.byteSize());
+
+        PixelConverter converter = new PixelConverter(format);
+        converter.convertScaled(ARGB, 2, 1, scaled);
+        converter.convert(ARGB, plain);
+
+        assertEquals(format.byteSize(), scaled.position());
+        scaled.flip();
+        plain.flip();
+        assertEquals(plain, scaled);
+    }
+
+    @Test
+    public void convertScaled_downscaleAveragesPixels() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.UINT8, 1, 1);
+        ByteBuffer dest = direct(format.byteSize());
+
+        // 2x2 down to 1x1 samples the center, the mean of all four pixels
+        new PixelConverter(format).convertScaled(new int[]{0x000000, 0x404040, 0x808080, 0xC0C0C0}, 2, 2, dest);
+
+        for (int c = 0; c < 3; c++) {
+            assertEquals(0x60, dest.get(c) & 0xFF);
+        }
+    }
+
+    @Test
+    public void convertScaled_upscaleInterpolatesAndClampsEdges() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.FLOAT32, 4, 1);
+        ByteBuffer dest = direct(format.byteSize());
+
+        new PixelConverter(format).convertScaled(new int[]{0x000000, 0x800000}, 2, 1, dest);
+
+        // Red plane: edges keep the source pixel, inner pixels are a quarter and three quarters between them
+        float[] expected = {0, 32, 96, 128};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], dest.getFloat(4 * i), 1e-4);
+        }
+    }
+
+    @Test
+    public void convertScaled_followsSourceSizeChanges() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.UINT8, 1, 1);
+        PixelConverter converter = new PixelConverter(format);
+        ByteBuffer dest = direct(format.byteSize());
+
+        converter.convertScaled(new int[]{0x000000, 0x404040, 0x808080, 0xC0C0C0}, 2, 2, dest);
+        dest.clear();
+        converter.convertScaled(new int[]{0x202020}, 1, 1, dest);
+
+        assertEquals(0x20, dest.get(0) & 0xFF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void convertScaled_rejectsTooFewPixels() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.UINT8, 1, 1);
+        new PixelConverter(format).convertScaled(new int[3], 2, 2, direct(format.byteSize()));
+    }
+
+    @Test
+    public void convert_floatsKeepDestOrderAndPosition() {
+        TensorFormat format = new TensorFormat(TensorFormat.Layout.NHWC, TensorFormat.DataType.FLOAT32, 2, 1);
+        ByteBuffer dest = ByteBuffer.allocate(4 + format.byteSize()).order(ByteOrder.BIG_ENDIAN);
+        dest.position(4);
+
+        new PixelConverter(format).convert(ARGB, dest);
+
+        assertEquals(4 + format.byteSize(), dest.position());
+        assertEquals(0x10, dest.getFloat(4), 0);
+        assertEquals(0x60, dest.getFloat(4 + 4 * 5), 0);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+public class SweepTest {
+
+    // Sleeps the candidate number of milliseconds per run, fails for negative candidates.
+    private static class SleepBackend implements InferenceBackend {
+        private final int millis;
+
+        SleepBackend(int millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public String getName() {
+            return "Sleep";
+        }
+
+        @Override
+        public void load() {
+            if (millis < 0) {
+                throw new IllegalStateException("unsupported");
+            }
+        }
+
+        @Override
+        public void prepareInput(String inputPath) {
+        }
+
+        @Override
+        public void run() throws InterruptedException {
+            Thread.sleep(millis);
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static BenchmarkConfig config() {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = new String[]{"a"};
+        config.repeat = 3;
+        config.warmup = 1;
+        config.maxWarmup = 1;
+        return config;
+    }
+
+    @Test
+    public void run_picksLowestMeanAndKeepsFailures() {
+        Sweep<Integer> sweep = new Sweep<>(config());
+        final int[] seen = new int[1];
+        sweep.setListener(new Sweep.Listener<Integer>() {
+            @Override
+            public void onCandidate(int index, int count, Sweep.Entry<Integer> entry) {
+                assertEquals(seen[0]++, index);
+                assertEquals(3, count);
+            }
+        });
+
+        List<Sweep.Entry<Integer>> entries = sweep.run(Arrays.asList(20, -1, 2),
+                new Sweep.BackendFactory<Integer>() {
+                    @Override
+                    public InferenceBackend create(Integer candidate) {
+                        return new SleepBackend(candidate);
+                    }
+                });
+
+        assertEquals(3, seen[0]);
+        assertEquals(3, entries.size());
+        assertTrue(entries.get(1).isFailed());
+        assertEquals("unsupported", entries.get(1).getError().getMessage());
+        assertEquals(Integer.valueOf(2), Sweep.fastest(entries).getCandidate());
+
+        String[] lines = Sweep.format(entries).split("\n");
+        assertTrue(lines[0].startsWith("2 -> "));
+        assertTrue(lines[1].startsWith("20 -> "));
+        assertTrue(lines[2].startsWith("-1 -> failed"));
+    }
+
+    @Test
+    public void highest_picksLargestMetric() {
+        List<Sweep.Entry<Integer>> entries = new Sweep<Integer>(config()).run(Arrays.asList(1, -1, 2),
+                new Sweep.BackendFactory<Integer>() {
+                    @Override
+                    public InferenceBackend create(final Integer candidate) {
+                        class MetricBackend extends SleepBackend implements MetricSource {
+                            MetricBackend() {
+                                super(candidate);
+                            }
+
+                            @Override
+                            public void reportMetrics(BenchmarkResult result) {
+                                result.putMetric("images_per_s", 10 * candidate);
+                            }
+                        }
+                        return new MetricBackend();
+                    }
+                });
+
+        assertEquals(Integer.valueOf(2), Sweep.highest(entries, "images_per_s").getCandidate());
+        assertEquals(Integer.valueOf(1), Sweep.fastest(entries).getCandidate());
+        assertNull(Sweep.highest(entries, "unknown"));
+    }
+
+    @Test
+    public void csv_hasOneRowPerCandidateAndMetricColumns() {
+        List<Sweep.Entry<Integer>> entries = new Sweep<Integer>(config()).run(Arrays.asList(5, -1, 1),
+                new Sweep.BackendFactory<Integer>() {
+                    @Override
+                    public InferenceBackend create(final Integer candidate) {
+                        if (candidate != 1) {
+                            return new SleepBackend(candidate);
+                        }
+                        class MetricBackend extends SleepBackend implements MetricSource {
+                            MetricBackend() {
+                                super(candidate);
+                            }
+
+                            @Override
+                            public void reportMetrics(BenchmarkResult result) {
+                                result.putMetric("cache, hits", 3);
+                            }
+                        }
+                        return new MetricBackend();
+                    }
+                });
+
+        String[] rows = Sweep.csv(entries).split("\n");
+
+        assertEquals(4, rows.length);
+        assertTrue(rows[0].startsWith("candidate,fps,mean_ms,"));
+        assertTrue(rows[0].endsWith(",\"cache, hits\",error"));
+        int columns = rows[0].split(",", -1).length;
+        assertTrue(rows[1].startsWith("1,"));
+        assertTrue(rows[1].contains(",3.0,"));
+        assertTrue(rows[2].startsWith("5,"));
+        assertTrue(rows[2].contains(",,"));
+        assertTrue(rows[3].startsWith("-1,,"));
+        assertTrue(rows[3].endsWith(",unsupported"));
+        // The quoted header field counts as one column
+        assertEquals(columns - 1, rows[3].split(",", -1).length);
+    }
+
+    @Test
+    public void fastest_isNullWhenEverythingFailed() {
+        List<Sweep.Entry<Integer>> entries = new Sweep<Integer>(config()).run(Arrays.asList(-1, -2),
+                new Sweep.BackendFactory<Integer>() {
+                    @Override
+                    public InferenceBackend create(Integer candidate) {
+                        return new SleepBackend(candidate);
+                    }
+                });
+
+        assertNull(Sweep.fastest(entries));
+    }
+
+    @Test
+    public void run_stopsWhenCancelled() {
+        final int[] created = new int[1];
+        try {
+            new Sweep<Integer>(config()).run(Arrays.asList(1, 2), new Sweep.BackendFactory<Integer>() {
+                @Override
+                public InferenceBackend create(Integer candidate) {
+                    created[0]++;
+                    Thread.currentThread().interrupt();
+                    return new SleepBackend(0);
+                }
+            });
+            fail();
+        } catch (CancellationException expected) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(1, created[0]);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.Assert.*;
+
+public class TuningCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void put_survivesReopening() throws Exception {
+        File file = new File(folder.getRoot(), "tuning/best.properties");
+        TuningCache cache = new TuningCache(file);
+        assertNull(cache.get("models/a.mnn"));
+
+        cache.put("models/a.mnn", "forward=0 threads=4");
+        cache.put("models/b.mnn", "forward=0 threads=2");
+        cache.remove("models/b.mnn");
+
+        TuningCache reopened = new TuningCache(file);
+        assertEquals("forward=0 threads=4", reopened.get("models/a.mnn"));
+        assertNull(reopened.get("models/b.mnn"));
+        assertFalse(new File(file.getParentFile(), "best.properties.tmp").exists());
+    }
+
+    @Test
+    public void get_treatsBrokenFileAsEmpty() throws Exception {
+        File file = folder.newFile("best.properties");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("broken=\\u12");
+        }
+
+        TuningCache cache = new TuningCache(file);
+
+        assertNull(cache.get("broken"));
+        cache.put("models/a.mnn", "threads=1");
+        assertEquals("threads=1", new TuningCache(file).get("models/a.mnn"));
+    }
+}
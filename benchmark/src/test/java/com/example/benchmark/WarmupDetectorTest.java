@@ -0,0 +1,85 @@
+package com.example.benchmark;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WarmupDetectorTest {
+
+    private static int feed(WarmupDetector detector, long[] series) {
+        for (long value : series) {
+            if (detector.add(value)) {
+                break;
+            }
+        }
+        return detector.getIterations();
+    }
+
+    @Test
+    public void settlesAfterExponentialWarmup() {
+        // 10 ms steady state, first runs up to 5x slower, 1% noise.
+        Random random = new Random(42);
+        long[] series = new long[200];
+        for (int i = 0; i < series.length; i++) {
+            double warmup = 1 + 4 * Math.exp(-i / 5.0);
+            series[i] = (long) (10_000_000 * warmup * (1 + 0.01 * random.nextGaussian()));
+        }
+        WarmupDetector detector = new WarmupDetector(8, 0.05, 4, 100);
+
+        int iterations = feed(detector, series);
+
+        assertTrue(detector.isSteady());
+        assertTrue("settled too early: " + iterations, iterations > 15);
+        assertTrue("settled too late: " + iterations, iterations < 40);
+        assertTrue(detector.getCv() <= 0.05);
+    }
+
+    @Test
+    public void steadySeriesStopsAtMinimum() {
+        long[] series = new long[50];
+        Arrays.fill(series, 1_000_000);
+        WarmupDetector detector = new WarmupDetector(4, 0.05, 10, 100);
+
+        assertEquals(10, feed(detector, series));
+        assertTrue(detector.isSteady());
+    }
+
+    @Test
+    public void keepsFirstTiming() {
+        WarmupDetector detector = new WarmupDetector(4, 0.05, 0, 100);
+        assertEquals(-1, detector.getFirstNanos());
+
+        detector.add(50_000_000);
+        detector.add(1_000_000);
+
+        assertEquals(50_000_000, detector.getFirstNanos());
+    }
+
+    @Test
+    public void noisySeriesHitsCap() {
+        long[] series = new long[100];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = i % 2 == 0 ? 1_000_000 : 3_000_000;
+        }
+        WarmupDetector detector = new WarmupDetector(8, 0.05, 4, 30);
+
+        assertEquals(30, feed(detector, series));
+        assertFalse(detector.isSteady());
+    }
+
+    @Test
+    public void slowDriftIsNotSteady() {
+        // 1% faster each run: low variation inside a window, but clearly drifting.
+        long[] series = new long[100];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = (long) (20_000_000 * Math.pow(0.99, i));
+        }
+        WarmupDetector detector = new WarmupDetector(16, 0.05, 0, 50);
+
+        assertEquals(50, feed(detector, series));
+        assertFalse(detector.isSteady());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.onnx;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.benchmark.InputCache;
+import com.example.benchmark.PixelConverter;
+import com.example.benchmark.TensorFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Decodes an image asset and resizes it into a tensor for the input cache, in one pass without a scaled bitmap.
+public class AssetInputLoader implements InputCache.Loader {
+
+    private final AssetManager assetManager;
+
+    // Reused between inputs of the same format
+    private PixelConverter converter;
+    private int[] pixels;
+
+    public AssetInputLoader(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    @Override
+    public void load(String inputPath, TensorFormat format, ByteBuffer dest) throws IOException {
+        Bitmap bitmap;
+        try (InputStream inputStream = assetManager.open(inputPath)) {
+            bitmap = BitmapFactory.decodeStream(inputStream);
+        }
+        if (bitmap == null) {
+            throw new IOException("Can't decode " + inputPath);
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+
+        if (converter == null || !converter.getFormat().equals(format)) {
+            converter = new PixelConverter(format);
+        }
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        // One JNI call for all pixels
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+        converter.convertScaled(pixels, width, height, dest);
+    }
+}
@@ -1,268 +1,237 @@
 package com.example.onnx;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
-
-import android.Manifest;
-import android.content.pm.PackageManager;
-import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+
 import android.os.Bundle;
-import android.os.Environment;
+import android.os.Debug;
+import android.os.Process;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
-import android.widget.Toast;
 
+import com.example.benchmark.Benchmark;
+import com.example.benchmark.BenchmarkConfig;
+import com.example.benchmark.BenchmarkExecutor;
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.ProgressListener;
+import com.example.benchmark.Sweep;
+import com.example.benchmark.TensorFormat;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
 
-import ai.onnxruntime.NodeInfo;
-import ai.onnxruntime.OnnxTensor;
-import ai.onnxruntime.OrtEnvironment;
-import ai.onnxruntime.OrtException;
-import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.OrtSession.SessionOptions.ExecutionMode;
+import ai.onnxruntime.OrtSession.SessionOptions.OptLevel;
 
 public class MainActivity extends AppCompatActivity {
 
     // PARAMETERS
     // CUSTOMIZE HERE
-    private final int       inputBatch      = 1;
-    private final int       inputChannels   = 3;
     private final int       inputWidth      = 64;
     private final int       inputHeight     = 64;
     private final int       input_repeat    = 8; // Repeat inputs n times.
-    private final int       exec_time_shift = 4; // Drop first n elements from exec_time.
+    private final int       max_warmup      = 64; // Stop adaptive warmup after n runs.
     private final String    modelPath       = "models/yolov5s.all.ort";
     private final boolean   torchMode       = true;
+    private final long      inputCacheBytes = 64L << 20; // Byte budget of preprocessed inputs.
 
     // ONNX PARAMETERS
-    OrtSession.SessionOptions.OptLevel optLevel = OrtSession.SessionOptions.OptLevel.ALL_OPT;
-    OrtSession.SessionOptions.ExecutionMode executionMode = OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL;
+    private final int       numThreads      = 4;
+    private final OptLevel  optLevel        = OptLevel.ALL_OPT;
+    private final ExecutionMode executionMode = ExecutionMode.SEQUENTIAL;
+    private final boolean   memoryPattern   = true;
+    private final boolean   cpuArena        = true;
+
+    // SWEEP PARAMETERS
+    // Benchmark every combination and report the fastest instead of the single setting above.
+    private final boolean   sweep           = false;
+    private final int[]     sweepThreads    = {1, 2, 4, Runtime.getRuntime().availableProcessors()};
+    private final OptLevel[] sweepOptLevels = {OptLevel.BASIC_OPT, OptLevel.ALL_OPT};
+    private final ExecutionMode[] sweepExecutionModes = {ExecutionMode.SEQUENTIAL, ExecutionMode.PARALLEL};
+    private final boolean[] sweepMemoryPatterns = {true, false};
+    private final boolean[] sweepCpuArenas  = {true, false};
+
+    // BATCH PARAMETERS
+    // Benchmark the single setting above once per batch size and report the best images per second.
+    // Needs a model exported with a dynamic batch dimension, sizes it rejects are logged as failed.
+    private final boolean   batchSweep      = false;
+    private final List<Integer> sweepBatches = Arrays.asList(1, 2, 4, 8);
 
     // ASSETS
     private final String inputFolder = "inputs";
+    private final String optimizedModelFolder = "ort"; // Inside the cache dir, only used for .onnx models.
 
     // UTILS
     private final DecimalFormat df = new DecimalFormat("#.###");
+    private InputCache inputCache;
+    private final ModelRegistry registry = new ModelRegistry();
+
+    // Benchmarks run one at a time on a high priority worker, never on the UI thread
+    private BenchmarkExecutor executor;
+    private BenchmarkExecutor.Handle running;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        inputCache = new InputCache(new AssetInputLoader(getAssets()), inputCacheBytes);
+        executor = new BenchmarkExecutor(
+                () -> Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY), this::runOnUiThread);
     }
 
-    private void fillInputArrayTorchMode(Bitmap bitmap, float[][][][] inputArray) {
-        for (int y = 0; y < inputHeight; y++) {
-            for (int x = 0; x < inputWidth; x++) {
-                int pixel = bitmap.getPixel(x, y);
-                inputArray[0][0][y][x] = ((pixel >> 16) & 0xFF);
-                inputArray[0][1][y][x] = ((pixel >> 8) & 0xFF);
-                inputArray[0][2][y][x] = ((pixel) & 0xFF);
-            }
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Sessions are cheap to recreate from the optimized model cache
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // On the worker, so a running benchmark never loses its session
+            executor.execute(this::closeModels);
+            inputCache.clear();
         }
     }
 
-    private void fillInputArrayTensorflowMode(Bitmap bitmap, float[][][][] inputArray) {
-        for (int y = 0; y < inputHeight; y++) {
-            for (int x = 0; x < inputWidth; x++) {
-                int pixel = bitmap.getPixel(x, y);
-                inputArray[0][y][x][0] = ((pixel >> 16) & 0xFF);
-                inputArray[0][y][x][1] = ((pixel >> 8) & 0xFF);
-                inputArray[0][y][x][2] = ((pixel) & 0xFF);
-            }
+    @Override
+    protected void onDestroy() {
+        if (running != null) {
+            running.cancel();
         }
+        executor.execute(this::closeModels);
+        executor.shutdown();
+        super.onDestroy();
     }
 
-    private Bitmap loadResizedInput(String inputPath, int resizedWidth, int resizedHeight) throws IOException{
-        Bitmap bitmap = BitmapFactory.decodeStream(
-                getAssets().open(inputPath));
-        Bitmap resized_bitmap = Bitmap.createScaledBitmap(bitmap,
-                resizedWidth, resizedHeight, true);
-        return bitmap;
+    // Close failures are only logged, the registry forgets the models anyway.
+    private void closeModels() {
+        try {
+            registry.closeAll();
+        } catch (Exception exception) {
+            Log.w("closeModels", "closing models failed", exception);
+        }
     }
 
-    private byte[] loadModelAsBytes(String modelPath) throws IOException{
-        InputStream inputStream = getAssets().open(modelPath);
-        int size = inputStream.available();
-        byte[] buffer = new byte[size];
-        inputStream.read(buffer);
-        inputStream.close();
-        return buffer;
-    }
+    private double estimateFps(String modelPath, boolean torchMode) throws Exception {
+        BenchmarkConfig config = createConfig();
+        OnnxOptions options = createOptions();
 
-    public double getMeanSeconds(ArrayList<Long> milliseconds) {
-        long sum = 0;
-        for (long millisecond: milliseconds) {
-            sum += millisecond;
-        }
-        double meanMill = (double) sum / (double) milliseconds.size();
-        return meanMill / 1000;
+        OnnxBackend backend = new OnnxBackend(getAssets(), inputCache, modelPath, createInputFormat(torchMode),
+                options, getOptimizedModelDir(), registry);
+        BenchmarkResult result = new Benchmark(config).run(backend);
+        Log.d("EstimateFPS", options + " " + result.format());
+        return result.getFps();
     }
 
-    public double getMeanFps(ArrayList<Long> milliseconds) {
-        double meanSec = getMeanSeconds(milliseconds);
-        double epsilon = 0.0000001;
+    // Returns the images per second of the best batch size, -1 if all of them failed.
+    private double batchFps(final String modelPath, boolean torchMode) throws Exception {
         double fps = -1;
-        if (meanSec > epsilon) {
-            fps = 1 / meanSec;
+        final TensorFormat inputFormat = createInputFormat(torchMode);
+        final OnnxOptions options = createOptions();
+
+        Sweep<Integer> sweep = new Sweep<>(createConfig());
+        sweep.setListener((index, count, entry) -> Log.d("BatchFPS", (index + 1) + "/" + count + " " + entry.format()));
+        List<Sweep.Entry<Integer>> entries = sweep.run(sweepBatches, batch ->
+                new OnnxBackend(getAssets(), inputCache, modelPath, inputFormat, batch, options,
+                        getOptimizedModelDir(), registry));
+
+        Sweep.Entry<Integer> best = Sweep.highest(entries, "images_per_s");
+        if (best != null) {
+            Log.d("BatchFPS", "best: " + best.format());
+            fps = best.getResult().getMetric("images_per_s");
         }
         return fps;
     }
 
-    private double estimateFpsTorchMode(String modelPath, int numThreads,
-                                OrtSession.SessionOptions.OptLevel graphOptimizationLevel,
-                                OrtSession.SessionOptions.ExecutionMode executionMode) {
-
-        ArrayList<Long> exec_time = new ArrayList<Long>();
-
-        try {
-            byte[]      modelBytes  = loadModelAsBytes(modelPath);
-            String[]    inputsNames = getAssets().list(inputFolder);
-
-            try {
-
-                // Session options does not include to default onnxruntime-mobile building.
-                // Create a custom building if you wanna optimize the code.
-
-                //SessionOptions sessionOptions = new SessionOptions();
-
-                // Set optimization level: [OptLevel.NO_OPT, OptLevel.ALL_OPT]
-                //sessionOptions.setOptimizationLevel(graphOptimizationLevel);
-
-                // Set number of threads: [integer]
-                //sessionOptions.setInterOpNumThreads(numThreads);
-
-                // Set execution mode: [ExecutionMode.PARALLEL, ExecutionMode.SEQUENTIAL]
-                //sessionOptions.setExecutionMode(executionMode);
-
-                // Set an environment
-                OrtEnvironment env = OrtEnvironment.getEnvironment();
-
-                // Create session from model bytes
-                OrtSession session = env.createSession(modelBytes);
-
-                // Load input meta
-                Map<String, NodeInfo> inputMetaMap = session.getInputInfo();
-                NodeInfo inputMeta = inputMetaMap.values().iterator().next();
-                for (int i = 0; i < input_repeat; i++) {
-                    for (String inputName : inputsNames) {
-
-                        // Load input as bitmap
-                        Bitmap bitmap = loadResizedInput(inputFolder + "/" + inputName, inputWidth, inputHeight);
-
-                        // Create and fill float array
-                        float[][][][] inputArray = new float[inputBatch][inputChannels][inputHeight][inputWidth];
-                        fillInputArrayTorchMode(bitmap, inputArray);
-
-                        // Create onnx input tensor
-                        OnnxTensor inputTensor = OnnxTensor.createTensor(env, inputArray);
-                        Map<String, OnnxTensor> container = new HashMap<>();
-                        container.put(inputMeta.getName(), inputTensor);
-
-                        long start = System.currentTimeMillis();
-                        OrtSession.Result result = session.run(container);
-                        long stop = System.currentTimeMillis();
-                        Log.d("Time", "" + (stop - start));
-                        exec_time.add(stop - start);
-                    }
-                }
-                exec_time = new ArrayList<Long>(exec_time.subList(exec_time_shift, exec_time.size()));
-
-            } catch (OrtException ortException) {
-                Log.d("EstimateFPS: ORTEx", ortException.getMessage());
-            }
-
-        } catch (IOException ioException) {
-            Log.d("EstimateFPS: IOEx", ioException.getMessage());
+    // Returns the fps of the fastest combination, -1 if all of them failed.
+    private double sweepFps(final String modelPath, boolean torchMode) throws Exception {
+        double fps = -1;
+        final TensorFormat inputFormat = createInputFormat(torchMode);
+        List<OnnxOptions> candidates = OnnxOptions.grid(sweepThreads, sweepOptLevels, sweepExecutionModes,
+                sweepMemoryPatterns, sweepCpuArenas);
+
+        Sweep<OnnxOptions> sweep = new Sweep<>(createConfig());
+        sweep.setListener((index, count, entry) -> {
+            Log.d("SweepFPS", (index + 1) + "/" + count + " " + entry.format());
+            // Keep only one candidate session in memory at a time
+            closeModels();
+        });
+        List<Sweep.Entry<OnnxOptions>> entries = sweep.run(candidates, candidate ->
+                new OnnxBackend(getAssets(), inputCache, modelPath, inputFormat, candidate,
+                        getOptimizedModelDir(), registry));
+
+        Log.d("SweepFPS", "\n" + Sweep.format(entries));
+        Sweep.Entry<OnnxOptions> fastest = Sweep.fastest(entries);
+        if (fastest != null) {
+            Log.d("SweepFPS", "fastest: " + fastest.format());
+            fps = fastest.getResult().getFps();
         }
-
-        return getMeanFps(exec_time);
+        return fps;
     }
 
-    private double estimateFpsTensorflowMode(String modelPath, int numThreads,
-                                        OrtSession.SessionOptions.OptLevel graphOptimizationLevel,
-                                        OrtSession.SessionOptions.ExecutionMode executionMode) {
-
-        ArrayList<Long> exec_time = new ArrayList<Long>();
-
-        try {
-            byte[]      modelBytes  = loadModelAsBytes(modelPath);
-            String[]    inputsNames = getAssets().list(inputFolder);
-
-            try {
-
-                // Session options does not include to default onnxruntime-mobile building.
-                // Create a custom building if you wanna optimize the code.
-
-                //SessionOptions sessionOptions = new SessionOptions();
-
-                // Set optimization level: [OptLevel.NO_OPT, OptLevel.ALL_OPT]
-                //sessionOptions.setOptimizationLevel(graphOptimizationLevel);
-
-                // Set number of threads: [integer]
-                //sessionOptions.setInterOpNumThreads(numThreads);
-
-                // Set execution mode: [ExecutionMode.PARALLEL, ExecutionMode.SEQUENTIAL]
-                //sessionOptions.setExecutionMode(executionMode);
-
-                // Set an environment
-                OrtEnvironment env = OrtEnvironment.getEnvironment();
-
-                // Create session from model bytes
-                OrtSession session = env.createSession(modelBytes);
-
-                // Load input meta
-                Map<String, NodeInfo> inputMetaMap = session.getInputInfo();
-                NodeInfo inputMeta = inputMetaMap.values().iterator().next();
-
-                for (String inputName : inputsNames) {
-
-                    // Load input as bitmap
-                    Bitmap bitmap = loadResizedInput(inputFolder + "/" + inputName, inputWidth, inputHeight);
-
-                    // Create and fill float array
-                    float[][][][] inputArray = new float[inputBatch][inputChannels][inputHeight][inputWidth];
-                    fillInputArrayTensorflowMode(bitmap, inputArray);
-
-                    // Create onnx input tensor
-                    OnnxTensor inputTensor = OnnxTensor.createTensor(env, inputArray);
-                    Map<String, OnnxTensor> container = new HashMap<>();
-                    container.put(inputMeta.getName(), inputTensor);
+    private OnnxOptions createOptions() {
+        OnnxOptions options = new OnnxOptions();
+        options.intraOpThreads = numThreads;
+        options.interOpThreads = executionMode == ExecutionMode.PARALLEL ? numThreads : 0;
+        options.optLevel = optLevel;
+        options.executionMode = executionMode;
+        options.memoryPattern = memoryPattern;
+        options.cpuArena = cpuArena;
+        return options;
+    }
 
-                    long start = System.currentTimeMillis();
-                    OrtSession.Result result = session.run(container);
-                    long stop = System.currentTimeMillis();
-                    Log.d("Time", "" + (stop-start));
-                    exec_time.add(stop - start);
-                }
+    private BenchmarkConfig createConfig() throws IOException {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = BenchmarkConfig.assetPaths(inputFolder, getAssets().list(inputFolder));
+        config.repeat = input_repeat;
+        config.maxWarmup = max_warmup;
+        config.memoryProbe = Debug::getNativeHeapAllocatedSize;
+        config.progressListener = executor.post(this::showProgress);
+        return config;
+    }
 
-            } catch (OrtException ortException) {
-                Log.d("EstimateFPS: ORTEx", ortException.getMessage());
-            }
+    private File getOptimizedModelDir() {
+        return new File(getCacheDir(), optimizedModelFolder);
+    }
 
-        } catch (IOException ioException) {
-            Log.d("EstimateFPS: IOEx", ioException.getMessage());
-        }
+    private TensorFormat createInputFormat(boolean torchMode) {
+        return new TensorFormat(torchMode ? TensorFormat.Layout.NCHW : TensorFormat.Layout.NHWC,
+                TensorFormat.DataType.FLOAT32, inputWidth, inputHeight);
+    }
 
-        return getMeanFps(exec_time);
+    private void showProgress(ProgressListener.Phase phase, int done, int total) {
+        TextView fps_value_core_1 = (TextView) findViewById(R.id.fps_value_core_1);
+        fps_value_core_1.setText(phase.name().toLowerCase() + " " + done + "/" + total);
     }
 
+    // Starts a benchmark, or cancels the one that is running.
     public void estimateFpsOnClick(View view) {
-        double fps = 0;
-        TextView fps_value_core_1 = (TextView) findViewById(R.id.fps_value_core_1);
-        if (torchMode) {
-            fps = estimateFpsTorchMode(modelPath, 1, optLevel, executionMode);
-            fps_value_core_1.setText(df.format(fps));
-        } else {
-            fps = estimateFpsTensorflowMode(modelPath, 1, optLevel, executionMode);
-            fps_value_core_1.setText(df.format(fps));
+        final TextView fps_value_core_1 = (TextView) findViewById(R.id.fps_value_core_1);
+        if (running != null && !running.isDone()) {
+            running.cancel();
+            return;
         }
+        running = executor.submit(
+                () -> sweep ? sweepFps(modelPath, torchMode)
+                        : batchSweep ? batchFps(modelPath, torchMode) : estimateFps(modelPath, torchMode),
+                new BenchmarkExecutor.Callback<Double>() {
+                    @Override
+                    public void onSuccess(Double fps) {
+                        fps_value_core_1.setText(df.format(fps));
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        Log.d("EstimateFPS", "" + exception.getMessage());
+                        fps_value_core_1.setText(df.format(-1));
+                    }
+
+                    @Override
+                    public void onCancelled() {
+                        fps_value_core_1.setText("-");
+                    }
+                });
     }
-}
\ No newline at end of file
+}
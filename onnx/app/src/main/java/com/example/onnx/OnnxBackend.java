@@ -0,0 +1,263 @@
+package com.example.onnx;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import com.example.benchmark.BatchedBackend;
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.MetricSource;
+import com.example.benchmark.ModelFiles;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.Statistics;
+import com.example.benchmark.TensorFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+// Runs the model with onnxruntime. Sessions of .onnx models start from a cached optimized ORT model after the
+// first load, .ort models are already optimized and load as they are.
+public class OnnxBackend implements BatchedBackend, MetricSource {
+
+    private static final String TAG = "OnnxBackend";
+
+    private final AssetManager assetManager;
+    private final InputCache inputCache;
+    private final String modelPath;
+    private final TensorFormat inputFormat;
+    private final int batchSize;
+    private final OnnxOptions options;
+    private final File optimizedModelDir;
+    private final ModelRegistry registry;
+
+    private OrtEnvironment env;
+    private OrtSession session;
+    // One direct buffer and one tensor over it for the whole run, refilled in place
+    private FloatBuffer inputBuffer;
+    private OnnxTensor inputTensor;
+    private final Map<String, OnnxTensor> container = new HashMap<>();
+
+    // Whether load() took the session from the registry, otherwise how it was created
+    private boolean reused;
+    private long sessionNanos;
+    private boolean warmStart;
+    // Whether the cold start wrote the optimized model, null if it did not try
+    private Boolean optimizedModelSaved;
+
+    public OnnxBackend(AssetManager assetManager, InputCache inputCache, String modelPath, TensorFormat inputFormat,
+                       OnnxOptions options, File optimizedModelDir, ModelRegistry registry) {
+        this(assetManager, inputCache, modelPath, inputFormat, 1, options, optimizedModelDir, registry);
+    }
+
+    // The model needs a dynamic batch dimension for batchSize > 1.
+    public OnnxBackend(AssetManager assetManager, InputCache inputCache, String modelPath, TensorFormat inputFormat,
+                       int batchSize, OnnxOptions options, File optimizedModelDir, ModelRegistry registry) {
+        this.assetManager = assetManager;
+        this.inputCache = inputCache;
+        this.modelPath = modelPath;
+        this.inputFormat = inputFormat;
+        this.batchSize = batchSize;
+        this.options = options;
+        this.optimizedModelDir = optimizedModelDir;
+        this.registry = registry;
+    }
+
+    @Override
+    public String getName() {
+        return "ORT";
+    }
+
+    @Override
+    public void load() throws Exception {
+        // Set an environment
+        env = OrtEnvironment.getEnvironment();
+
+        // Sessions are shared by every run with the same model and options
+        List<Object> key = Arrays.<Object>asList(modelPath, options);
+        reused = registry.contains(key);
+        session = registry.get(key, new ModelRegistry.Factory<OrtSession>() {
+            @Override
+            public OrtSession create() throws IOException, OrtException {
+                return createSession();
+            }
+        });
+
+        // Load input meta
+        Map<String, NodeInfo> inputMetaMap = session.getInputInfo();
+        NodeInfo inputMeta = inputMetaMap.values().iterator().next();
+
+        // A direct buffer in native order is used by ORT as is, no copy
+        inputBuffer = ByteBuffer.allocateDirect(batchSize * inputFormat.byteSize())
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        inputTensor = OnnxTensor.createTensor(env, inputBuffer, inputFormat.shape(batchSize));
+        container.put(inputMeta.getName(), inputTensor);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // Every slot of a batch gets the same input.
+    @Override
+    public void prepareInput(String inputPath) throws Exception {
+        String[] inputPaths = new String[batchSize];
+        Arrays.fill(inputPaths, inputPath);
+        prepareBatch(inputPaths);
+    }
+
+    @Override
+    public void prepareBatch(String[] inputPaths) throws Exception {
+        // Bulk copies of the cached inputs into the tensor memory, one after the other
+        inputBuffer.clear();
+        for (String inputPath : inputPaths) {
+            inputBuffer.put(inputCache.get(inputPath, inputFormat).asFloatBuffer());
+        }
+        inputBuffer.rewind();
+    }
+
+    @Override
+    public void run() throws OrtException {
+        OrtSession.Result result = session.run(container);
+        // Outputs hold native memory, free them right away
+        result.close();
+    }
+
+    @Override
+    public void release() {
+        closeInputTensor();
+        // The session stays open in the registry
+        session = null;
+    }
+
+    private void closeInputTensor() {
+        container.clear();
+        if (inputTensor != null) {
+            inputTensor.close();
+            inputTensor = null;
+        }
+        inputBuffer = null;
+    }
+
+    @Override
+    public void reportMetrics(BenchmarkResult result) {
+        if (reused) {
+            result.putMetric("session_reused", 1);
+        } else {
+            result.putMetric(warmStart ? "session_warm_ms" : "session_cold_ms", Statistics.toMillis(sessionNanos));
+        }
+        if (optimizedModelSaved != null) {
+            result.putMetric("optimized_model_saved", optimizedModelSaved ? 1 : 0);
+        }
+    }
+
+    private OrtSession createSession() throws IOException, OrtException {
+        byte[] modelBytes;
+        try (InputStream inputStream = assetManager.open(modelPath)) {
+            modelBytes = ModelFiles.readFully(inputStream);
+        }
+
+        optimizedModelSaved = null;
+        long start = System.nanoTime();
+        OrtSession created;
+        if (modelPath.endsWith(".ort")) {
+            // Nothing left to optimize, and the mobile runtime can't save ORT models loaded from ORT models
+            warmStart = false;
+            try (OrtSession.SessionOptions sessionOptions = options.toSessionOptions()) {
+                created = env.createSession(modelBytes, sessionOptions);
+            }
+        } else {
+            File optimizedModel = optimizedModelFile(modelBytes);
+            created = optimizedModel.isFile() ? createSession(optimizedModel) : null;
+            warmStart = created != null;
+            if (!warmStart) {
+                created = createSession(modelBytes, optimizedModel);
+            }
+        }
+        sessionNanos = System.nanoTime() - start;
+        return created;
+    }
+
+    // Only the graph optimization level changes the optimized model, threads and allocator settings don't.
+    // Named <model>.<level>.<hash>.ort, so a new version of the model replaces the old file.
+    private File optimizedModelFile(byte[] modelBytes) {
+        return new File(optimizedModelDir, optimizedModelPrefix() + ModelFiles.sha256(modelBytes).substring(0, 16)
+                + ".ort");
+    }
+
+    private String optimizedModelPrefix() {
+        return new File(modelPath).getName() + "." + options.optLevel + ".";
+    }
+
+    // Other versions of the same model and level, and leftovers of interrupted saves.
+    private void deleteStaleModels(File current) {
+        File[] files = optimizedModelDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(optimizedModelPrefix()) && !file.equals(current)) {
+                file.delete();
+            }
+        }
+    }
+
+    // Load a previously saved optimized model. A broken file is deleted, so the next load rebuilds it.
+    private OrtSession createSession(File optimizedModel) throws OrtException {
+        try (OrtSession.SessionOptions sessionOptions = options.toSessionOptions()) {
+            return env.createSession(optimizedModel.getPath(), sessionOptions);
+        } catch (OrtException ortException) {
+            Log.w(TAG, "Deleting unreadable optimized model " + optimizedModel, ortException);
+            optimizedModel.delete();
+            return null;
+        }
+    }
+
+    // Create the session from the original model and save the optimized graph on the way.
+    private OrtSession createSession(byte[] modelBytes, File optimizedModel) throws OrtException {
+        if (!optimizedModelDir.isDirectory() && !optimizedModelDir.mkdirs()) {
+            throw new IllegalStateException("Can not create " + optimizedModelDir);
+        }
+        // Written under a temporary name, so an interrupted save is never picked up as a cached model
+        File partial = new File(optimizedModelDir, optimizedModel.getName() + ".tmp");
+        OrtSession created;
+        try (OrtSession.SessionOptions sessionOptions = options.toSessionOptions()) {
+            sessionOptions.setOptimizedModelFilePath(partial.getPath());
+            // The mobile runtime only reads the ORT format
+            sessionOptions.addConfigEntry("session.save_model_format", "ORT");
+            created = env.createSession(modelBytes, sessionOptions);
+        } catch (OrtException ortException) {
+            // Saving may be rejected, the session itself doesn't need it
+            Log.w(TAG, "Saving the optimized model of " + modelPath + " failed", ortException);
+            partial.delete();
+            optimizedModelSaved = false;
+            try (OrtSession.SessionOptions sessionOptions = options.toSessionOptions()) {
+                return env.createSession(modelBytes, sessionOptions);
+            }
+        }
+        // A minimal runtime build may skip writing the file without an error
+        optimizedModelSaved = partial.isFile() && partial.renameTo(optimizedModel);
+        if (optimizedModelSaved) {
+            deleteStaleModels(optimizedModel);
+        } else {
+            partial.delete();
+            Log.w(TAG, "No optimized model written for " + modelPath + ", every start stays cold");
+        }
+        return created;
+    }
+}
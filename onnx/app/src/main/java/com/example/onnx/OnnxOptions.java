@@ -0,0 +1,95 @@
+package com.example.onnx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.OrtSession.SessionOptions.ExecutionMode;
+import ai.onnxruntime.OrtSession.SessionOptions.OptLevel;
+
+// Session settings of the ONNX backend, applied through OrtSession.SessionOptions.
+public class OnnxOptions {
+    // default
+    public int intraOpThreads = 0; // 0 lets onnxruntime pick.
+    public int interOpThreads = 0; // Only used in PARALLEL execution mode.
+    public OptLevel optLevel = OptLevel.ALL_OPT;
+    public ExecutionMode executionMode = ExecutionMode.SEQUENTIAL;
+    public boolean memoryPattern = true;
+    public boolean cpuArena = true;
+
+    public OrtSession.SessionOptions toSessionOptions() throws OrtException {
+        OrtSession.SessionOptions sessionOptions = new OrtSession.SessionOptions();
+        try {
+            sessionOptions.setIntraOpNumThreads(intraOpThreads);
+            sessionOptions.setInterOpNumThreads(interOpThreads);
+            sessionOptions.setOptimizationLevel(optLevel);
+            sessionOptions.setExecutionMode(executionMode);
+            sessionOptions.setMemoryPatternOptimization(memoryPattern);
+            sessionOptions.setCPUArenaAllocator(cpuArena);
+        } catch (OrtException ortException) {
+            sessionOptions.close();
+            throw ortException;
+        }
+        return sessionOptions;
+    }
+
+    // Cartesian product of the given values.
+    public static List<OnnxOptions> grid(int[] threads, OptLevel[] optLevels, ExecutionMode[] executionModes,
+                                         boolean[] memoryPatterns, boolean[] cpuArenas) {
+        List<OnnxOptions> grid = new ArrayList<>();
+        for (int thread : threads) {
+            for (OptLevel optLevel : optLevels) {
+                for (ExecutionMode executionMode : executionModes) {
+                    for (boolean memoryPattern : memoryPatterns) {
+                        for (boolean cpuArena : cpuArenas) {
+                            OnnxOptions options = new OnnxOptions();
+                            options.intraOpThreads = thread;
+                            options.interOpThreads = executionMode == ExecutionMode.PARALLEL ? thread : 0;
+                            options.optLevel = optLevel;
+                            options.executionMode = executionMode;
+                            options.memoryPattern = memoryPattern;
+                            options.cpuArena = cpuArena;
+                            grid.add(options);
+                        }
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OnnxOptions that = (OnnxOptions) o;
+        return intraOpThreads == that.intraOpThreads
+                && interOpThreads == that.interOpThreads
+                && optLevel == that.optLevel
+                && executionMode == that.executionMode
+                && memoryPattern == that.memoryPattern
+                && cpuArena == that.cpuArena;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = intraOpThreads;
+        result = 31 * result + interOpThreads;
+        result = 31 * result + optLevel.hashCode();
+        result = 31 * result + executionMode.hashCode();
+        result = 31 * result + (memoryPattern ? 1 : 0);
+        result = 31 * result + (cpuArena ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "intra=" + intraOpThreads
+                + " inter=" + interOpThreads
+                + " opt=" + optLevel
+                + " mode=" + executionMode
+                + " memPattern=" + memoryPattern
+                + " arena=" + cpuArena;
+    }
+}
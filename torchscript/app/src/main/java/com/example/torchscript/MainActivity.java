@@ -1,35 +1,23 @@
 package com.example.torchscript;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
-
-import android.Manifest;
-import android.content.Context;
-import android.content.pm.PackageManager;
-import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+
 import android.os.Bundle;
-import android.os.Environment;
+import android.os.Process;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
-import android.widget.Toast;
 
-import org.pytorch.IValue;
-import org.pytorch.LiteModuleLoader;
-import org.pytorch.Module;
-import org.pytorch.Tensor;
-import org.pytorch.torchvision.TensorImageUtils;
+import com.example.benchmark.Benchmark;
+import com.example.benchmark.BenchmarkConfig;
+import com.example.benchmark.BenchmarkExecutor;
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.ProgressListener;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -38,134 +26,109 @@ public class MainActivity extends AppCompatActivity {
     private final int       inputHeight     = 64;
     private final int       inputWidth      = 64;
     private final int       input_repeat    = 8; // Repeat inputs n times.
-    private final int       exec_time_shift = 4; // Drop first n elements from exec_time.
+    private final int       max_warmup      = 64; // Stop adaptive warmup after n runs.
     private final String    inputFolder     = "inputs";
     private final String    modelFolder     = "models";
     private final String    modelName       = "yolov5s.ptl";
+    private final long      inputCacheBytes = 64L << 20; // Byte budget of preprocessed inputs.
+    private final boolean   postprocess     = false; // Also read the outputs back into Java in every run, not done by the other apps.
 
     // UTILS
     private final DecimalFormat df = new DecimalFormat("#.###");
+    private InputCache inputCache;
+
+    // Loaded modules, kept between runs
+    private final ModelRegistry registry = new ModelRegistry();
 
-    // PERMISSIONS
-    private static final int PERMISSION_REQUEST_WRITE_STORAGE = 1;
+    // Benchmarks run one at a time on a high priority worker, never on the UI thread
+    private BenchmarkExecutor executor;
+    private BenchmarkExecutor.Handle running;
 
     // ASSETS
-    private final String name_external_folder = "/torchscript";
-    private final String path_external_assets = Environment.getExternalStorageDirectory().getAbsolutePath() + name_external_folder;
+    // Staged once into filesDir, LiteModuleLoader needs a file path
+    private final String modelPath = modelFolder + "/" + modelName;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-
-        // Give the app permission to access storage
-        if (ContextCompat.checkSelfPermission(MainActivity.this,
-                Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(MainActivity.this,
-                    new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, PERMISSION_REQUEST_WRITE_STORAGE);
-        }
+        inputCache = new InputCache(new AssetInputLoader(getAssets()), inputCacheBytes);
+        executor = new BenchmarkExecutor(
+                () -> Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY), this::runOnUiThread);
     }
 
-    public double get_mean_seconds(ArrayList<Long> milliseconds) {
-        long sum = 0;
-        for (long millisecond: milliseconds) {
-            sum += millisecond;
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Modules are reloaded from the staged file
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // On the worker, so a running benchmark keeps its module
+            executor.execute(this::close_models);
+            inputCache.clear();
         }
-        double mean_m = (double) sum / (double) milliseconds.size();
-        return mean_m / 1000;
     }
 
-    public double get_mean_fps(ArrayList<Long> milliseconds) {
-        double mean_s = get_mean_seconds(milliseconds);
-        double epsilon = 0.0000001;
-        double fps = -1;
-        if (mean_s > epsilon) {
-            fps = 1 / mean_s;
+    @Override
+    protected void onDestroy() {
+        if (running != null) {
+            running.cancel();
         }
-        return fps;
+        executor.execute(this::close_models);
+        executor.shutdown();
+        super.onDestroy();
     }
 
-    private void copyAsset(String directory, String prefix, String filename) {
-        File dir = new File(directory);
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
-        AssetManager assetManager = getAssets();
-        InputStream in = null;
-        OutputStream out = null;
+    // Close failures are only logged, the registry forgets the models anyway.
+    private void close_models() {
         try {
-            in = assetManager.open(prefix + filename);
-            File outFile = new File(directory, filename);
-            out = new FileOutputStream(outFile);
-            copyFile(in, out);
-            Toast.makeText(this, "Assets was successfully copied.", Toast.LENGTH_SHORT).show();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, "Assets was not copied!", Toast.LENGTH_SHORT).show();
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            registry.closeAll();
+        } catch (Exception exception) {
+            Log.w("close_models", "closing models failed", exception);
         }
+    }
 
+    public double estimate_fps() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.inputs = BenchmarkConfig.assetPaths(inputFolder, getAssets().list(inputFolder));
+        config.repeat = input_repeat;
+        config.maxWarmup = max_warmup;
+        config.progressListener = executor.post(this::show_progress);
+
+        TorchScriptBackend backend = new TorchScriptBackend(getAssets(), inputCache, modelPath,
+                new File(getFilesDir(), modelFolder), registry, inputWidth, inputHeight, postprocess);
+        BenchmarkResult result = new Benchmark(config).run(backend);
+        Log.d("estimate_fps", result.format());
+        return result.getFps();
     }
 
-    private void copyFile(InputStream in, OutputStream out) throws IOException {
-        byte[] buffer = new byte[1024];
-        int read;
+    private void show_progress(ProgressListener.Phase phase, int done, int total) {
+        TextView fps_value = (TextView) findViewById(R.id.fps_value);
+        fps_value.setText(phase.name().toLowerCase() + " " + done + "/" + total);
+    }
 
-        while ((read = in.read(buffer)) != -1) {
-            out.write(buffer, 0, read);
+    // Starts a benchmark, or cancels the one that is running.
+    public void estimate_on_click(View view){
+        final TextView fps_value = (TextView) findViewById(R.id.fps_value);
+        if (running != null && !running.isDone()) {
+            running.cancel();
+            return;
         }
-    }
+        running = executor.submit(this::estimate_fps, new BenchmarkExecutor.Callback<Double>() {
+            @Override
+            public void onSuccess(Double fps) {
+                fps_value.setText(df.format(fps));
+            }
 
-    public double estimate_fps() {
-        double fps = -1;
-        try {
-            copyAsset(path_external_assets, modelFolder + "/", modelName);
-            Module model = LiteModuleLoader.load(path_external_assets + "/" + modelName);
-            AssetManager assetManager = getAssets();
-            String[] images_names = assetManager.list(inputFolder);
-
-            // execution time list
-            ArrayList<Long> exec_time = new ArrayList<Long>();
-            for (int i = 0; i < input_repeat; i++) {
-                for (String image_name : images_names) {
-                    Bitmap bitmap = BitmapFactory.decodeStream(getAssets().open(inputFolder + "/" + image_name));
-                    // Resize
-                    Bitmap resized_bitmap = Bitmap.createScaledBitmap(bitmap, inputWidth, inputHeight, true);
-                    Tensor inputTensor = TensorImageUtils.bitmapToFloat32Tensor(resized_bitmap,
-                            TensorImageUtils.TORCHVISION_NORM_MEAN_RGB, TensorImageUtils.TORCHVISION_NORM_STD_RGB);
-
-                    long start = System.currentTimeMillis();
-                    model.forward(IValue.from(inputTensor));
-                    long stop = System.currentTimeMillis();
-
-                    exec_time.add(stop - start);
-                }
+            @Override
+            public void onFailure(Exception exception) {
+                Log.d("estimate_fps", "" + exception.getMessage());
+                fps_value.setText(df.format(-1));
             }
-            exec_time = new ArrayList<Long>(exec_time.subList(exec_time_shift, exec_time.size()));
-            fps = get_mean_fps(exec_time);
-        } catch (IOException ioException) {
-            Log.d("estimate_fps", ioException.getMessage());
-        }
-        return fps;
-    }
 
-    public void estimate_on_click(View view){
-        TextView fps_value = (TextView) findViewById(R.id.fps_value);
-        double fps = estimate_fps();
-        fps_value.setText(df.format(fps));
+            @Override
+            public void onCancelled() {
+                fps_value.setText("-");
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.example.torchscript;
+
+import org.pytorch.DType;
+import org.pytorch.IValue;
+import org.pytorch.Tensor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Unpacks what forward() returns into float arrays: a tensor, or every tensor of nested tuples and lists,
+// e.g. YOLOv5's detections followed by its feature maps.
+// pytorch_android 1.9 only exposes tensor data through getDataAsFloatArray(), which copies once per output.
+public class OutputReader {
+
+    // Reused between reads, only the data arrays are new
+    private final List<Tensor> tensors = new ArrayList<>();
+    private final List<float[]> data = new ArrayList<>();
+
+    // Number of output tensors.
+    public int read(IValue value) {
+        tensors.clear();
+        collect(value);
+        data.clear();
+        for (Tensor tensor : tensors) {
+            if (tensor.dtype() != DType.FLOAT32) {
+                throw new IllegalStateException("Unsupported output type " + tensor.dtype());
+            }
+            data.add(tensor.getDataAsFloatArray());
+        }
+        return tensors.size();
+    }
+
+    private void collect(IValue value) {
+        if (value.isTensor()) {
+            tensors.add(value.toTensor());
+        } else if (value.isTuple()) {
+            for (IValue element : value.toTuple()) {
+                collect(element);
+            }
+        } else if (value.isList()) {
+            for (IValue element : value.toList()) {
+                collect(element);
+            }
+        } else if (value.isTensorList()) {
+            for (Tensor tensor : value.toTensorList()) {
+                tensors.add(tensor);
+            }
+        } else {
+            throw new IllegalStateException("Unsupported output " + value);
+        }
+    }
+
+    // Data of the last read, valid until the next one.
+    public float[] get(int index) {
+        return data.get(index);
+    }
+
+    public long[] shape(int index) {
+        return tensors.get(index).shape();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.torchscript;
+
+import android.content.res.AssetManager;
+
+import com.example.benchmark.BenchmarkResult;
+import com.example.benchmark.InferenceBackend;
+import com.example.benchmark.InputCache;
+import com.example.benchmark.LatencyHistogram;
+import com.example.benchmark.MeasureListener;
+import com.example.benchmark.MetricSource;
+import com.example.benchmark.ModelRegistry;
+import com.example.benchmark.ModelStager;
+import com.example.benchmark.Statistics;
+import com.example.benchmark.TensorFormat;
+
+import org.pytorch.IValue;
+import org.pytorch.LiteModuleLoader;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class TorchScriptBackend implements InferenceBackend, MetricSource, MeasureListener {
+
+    // Lets the registry destroy modules it drops.
+    private static class LoadedModule implements AutoCloseable {
+        final Module module;
+
+        LoadedModule(Module module) {
+            this.module = module;
+        }
+
+        @Override
+        public void close() {
+            module.destroy();
+        }
+    }
+
+    private final AssetManager assetManager;
+    private final InputCache inputCache;
+    private final String modelPath;
+    private final ModelStager stager;
+    private final ModelRegistry registry;
+    private final TensorFormat inputFormat;
+    private final boolean postprocess;
+    private final OutputReader outputReader = new OutputReader();
+
+    private Module model;
+    // Allocated once in load(), prepareInput() copies each input into it, so runs allocate no input objects
+    private ByteBuffer inputBuffer;
+    private Tensor inputTensor;
+    private IValue inputValue;
+
+    // Startup of the last load() that did not reuse the module
+    private long stagingNanos;
+    private boolean staged;
+    private long moduleNanos;
+    private boolean reused;
+
+    // Split of run() with postprocess, over the measured runs only
+    private final LatencyHistogram forwardHistogram = new LatencyHistogram();
+    private final LatencyHistogram postprocessHistogram = new LatencyHistogram();
+
+    // LiteModuleLoader can't read assets, so the model asset is staged into stagingDir first.
+    public TorchScriptBackend(AssetManager assetManager, InputCache inputCache, String modelPath, File stagingDir,
+                              ModelRegistry registry, int inputWidth, int inputHeight) {
+        this(assetManager, inputCache, modelPath, stagingDir, registry, inputWidth, inputHeight, false);
+    }
+
+    // With postprocess every run also reads the outputs back into Java, which is part of the measured time.
+    // The other backends don't, so leave it off to compare runtimes.
+    public TorchScriptBackend(AssetManager assetManager, InputCache inputCache, String modelPath, File stagingDir,
+                              ModelRegistry registry, int inputWidth, int inputHeight, boolean postprocess) {
+        this.assetManager = assetManager;
+        this.inputCache = inputCache;
+        this.modelPath = modelPath;
+        this.stager = new ModelStager(stagingDir);
+        this.registry = registry;
+        this.inputFormat = new TensorFormat(TensorFormat.Layout.NCHW, TensorFormat.DataType.FLOAT32,
+                inputWidth, inputHeight, 3, TensorFormat.TORCHVISION_MEAN, TensorFormat.TORCHVISION_STD);
+        this.postprocess = postprocess;
+    }
+
+    @Override
+    public String getName() {
+        return "TorchScript";
+    }
+
+    @Override
+    public void load() throws Exception {
+        // Assets only change with a new APK, which starts with an empty registry, so a loaded module is
+        // never stale and the asset is neither staged nor hashed again
+        reused = registry.contains(modelPath);
+        model = registry.get(modelPath, new ModelRegistry.Factory<LoadedModule>() {
+            @Override
+            public LoadedModule create() throws IOException {
+                return loadModule();
+            }
+        }).module;
+
+        // What Tensor.allocateFloatBuffer does, but keeps the bytes for bulk copies from the cache
+        inputBuffer = ByteBuffer.allocateDirect(inputFormat.byteSize()).order(ByteOrder.nativeOrder());
+        inputTensor = Tensor.fromBlob(inputBuffer.asFloatBuffer(), inputFormat.shape());
+        inputValue = IValue.from(inputTensor);
+    }
+
+    private LoadedModule loadModule() throws IOException {
+        long start = System.nanoTime();
+        ModelStager.Staged file = stager.stage(new File(modelPath).getName(), new ModelStager.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return assetManager.open(modelPath);
+            }
+        });
+        stagingNanos = System.nanoTime() - start;
+        staged = file.isCopied();
+
+        start = System.nanoTime();
+        LoadedModule module = new LoadedModule(LiteModuleLoader.load(file.getFile().getPath()));
+        moduleNanos = System.nanoTime() - start;
+        return module;
+    }
+
+    @Override
+    public void prepareInput(String inputPath) throws Exception {
+        // Already normalized by the loader, the tensor sees the new values in place
+        inputBuffer.clear();
+        inputBuffer.put(inputCache.get(inputPath, inputFormat));
+    }
+
+    @Override
+    public void run() {
+        if (!postprocess) {
+            model.forward(inputValue);
+            return;
+        }
+        long start = System.nanoTime();
+        IValue output = model.forward(inputValue);
+        long forwarded = System.nanoTime();
+        outputReader.read(output);
+        long stop = System.nanoTime();
+        forwardHistogram.record(forwarded - start);
+        postprocessHistogram.record(stop - forwarded);
+    }
+
+    @Override
+    public void onMeasureStart() {
+        forwardHistogram.reset();
+        postprocessHistogram.reset();
+    }
+
+    // Outputs of the last run, only read with postprocess.
+    public OutputReader getOutputs() {
+        return outputReader;
+    }
+
+    @Override
+    public void reportMetrics(BenchmarkResult result) {
+        if (reused) {
+            result.putMetric("module_reused", 1);
+        } else {
+            result.putMetric("staging_ms", Statistics.toMillis(stagingNanos));
+            result.putMetric("model_staged", staged ? 1 : 0);
+            result.putMetric("module_load_ms", Statistics.toMillis(moduleNanos));
+        }
+        if (postprocess && forwardHistogram.getCount() > 0) {
+            result.putMetric("forward_ms", Statistics.toMillis(forwardHistogram.getMean()));
+            result.putMetric("postprocess_ms", Statistics.toMillis(postprocessHistogram.getMean()));
+        }
+    }
+
+    @Override
+    public void release() {
+        // The module stays in the registry for the next run
+        model = null;
+        inputBuffer = null;
+        inputTensor = null;
+        inputValue = null;
+    }
+}